@@ -26,6 +26,9 @@ if [ $QUADLET_FOUND -eq 0 ]; then
     echo "Quadlet service generation will likely fail."
 fi
 
+# Directory holding the power-cycle state file (mounted into the container)
+mkdir -p /var/lib/qwatcher
+
 if [ $QUADLET_FOUND -eq 1 ]; then
     # --- QUADLET DEPLOYMENT (Podman 4.4+) ---
     echo "Deploying via Quadlet..."
@@ -65,6 +68,7 @@ else
     podman create \
       --name $CONTAINER_NAME \
       --volume /var/run/dbus/system_bus_socket:/var/run/dbus/system_bus_socket \
+      --volume /var/lib/qwatcher:/var/lib/qwatcher:Z \
       --env DBUS_SYSTEM_BUS_ADDRESS=unix:path=/var/run/dbus/system_bus_socket \
       --env QUARKUS_HTTP_PORT=8080 \
       --env QWATCHER_BLUETOOTH_SHELLY_TX_UUID=5f6d4f53-5f52-5043-5f74-785f63746c5f \
@@ -73,6 +77,8 @@ else
       --env QWATCHER_MONITOR_INTERNET_OFFLINE_THRESHOLD_MINUTES=5 \
       --env QWATCHER_MONITOR_INTERNET_POWER_CYCLE_DELAY_MINUTES=2 \
       --env QWATCHER_MONITOR_INTERNET_TARGET_DEVICE_ID=change-me \
+      --env QWATCHER_MONITOR_INTERNET_STATE_FILE=/var/lib/qwatcher/power-cycle.wal \
+      --env QWATCHER_MONITOR_HISTORY_DIR=/var/lib/qwatcher/history \
       --network host \
       --user root \
       $IMAGE
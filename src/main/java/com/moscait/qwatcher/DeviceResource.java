@@ -1,14 +1,19 @@
 package com.moscait.qwatcher;
 
+import com.moscait.qwatcher.model.CircuitBreakerStatus;
+import com.moscait.qwatcher.model.RelayPathStatus;
 import com.moscait.qwatcher.service.BluetoothService;
+import com.moscait.qwatcher.service.HttpRpcRelayDriver;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import java.util.List;
 import java.util.Map;
 
 @Path("/api/devices")
@@ -17,12 +22,17 @@ public class DeviceResource {
     @Inject
     BluetoothService bluetoothService;
 
+    @Inject
+    HttpRpcRelayDriver httpDriver;
+
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response addDevice(Map<String, String> payload) {
         String id = payload.get("id");
         String name = payload.get("name");
+        // Optional LAN address for the local HTTP RPC path
+        String host = payload.get("host");
 
         if (id == null || id.isBlank()) {
             return Response.status(Response.Status.BAD_REQUEST).entity("ID is required").build();
@@ -32,10 +42,31 @@ public class DeviceResource {
             name = "Unknown Device";
         }
 
-        bluetoothService.addManualDevice(id, name);
+        try {
+            bluetoothService.addManualDevice(id, name);
+            if (host != null) {
+                httpDriver.registerHost(id, host);
+            }
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
         return Response.ok().build();
     }
 
+    @GET
+    @Path("/breakers")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<CircuitBreakerStatus> getCircuitBreakers() {
+        return bluetoothService.getCircuitBreakers();
+    }
+
+    @GET
+    @Path("/paths")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<RelayPathStatus> getRelayPaths() {
+        return bluetoothService.getRelayPaths();
+    }
+
     @POST
     @Path("/{id}/connect")
     @Produces(MediaType.APPLICATION_JSON)
@@ -72,6 +103,8 @@ public class DeviceResource {
         try {
             bluetoothService.controlDevice(id, command);
             return Response.ok().build();
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
         } catch (Exception e) {
             return Response.serverError().entity("Error: " + e.getMessage()).build();
         }
@@ -3,21 +3,40 @@ package com.moscait.qwatcher;
 import com.moscait.qwatcher.model.HostStatus;
 import com.moscait.qwatcher.service.HostService;
 import com.moscait.qwatcher.service.InternetMonitorService;
+import com.moscait.qwatcher.service.MonitorHistory;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 @Path("/api/host")
 public class HostResource {
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+
     @Inject
     HostService hostService;
 
     @Inject
     InternetMonitorService monitorService;
 
+    @Inject
+    MonitorHistory monitorHistory;
+
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public HostStatus getStatus() {
@@ -46,4 +65,38 @@ public class HostResource {
         monitorService.updateSettings(targetId, threshold, delay);
         return monitorService.getMonitorStatus();
     }
+
+    /**
+     * Streams monitor history (events and power-cycle transitions) oldest first.
+     * Pass the {@code seq} of the last record received as {@code cursor} to resume.
+     */
+    @GET
+    @Path("/monitor/export")
+    @Produces({ NDJSON, CSV })
+    public Response exportMonitorHistory(@QueryParam("format") @DefaultValue("ndjson") String format,
+            @QueryParam("cursor") @DefaultValue("0") long cursor,
+            @QueryParam("from") Long from,
+            @QueryParam("to") Long to,
+            @QueryParam("type") List<String> types,
+            @QueryParam("limit") @DefaultValue("0") int limit) {
+        boolean csv = "csv".equalsIgnoreCase(format);
+        if (!csv && !"ndjson".equalsIgnoreCase(format)) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Format must be ndjson or csv").build();
+        }
+
+        Set<String> typeFilter = new HashSet<>();
+        if (types != null) {
+            for (String type : types) {
+                typeFilter.add(type.toUpperCase());
+            }
+        }
+        MonitorHistory.Query query = new MonitorHistory.Query(cursor, from, to, typeFilter, limit);
+
+        StreamingOutput body = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            monitorHistory.export(query, csv, writer);
+            writer.flush();
+        };
+        return Response.ok(body, csv ? CSV : NDJSON).build();
+    }
 }
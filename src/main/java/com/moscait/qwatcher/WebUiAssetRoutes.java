@@ -0,0 +1,223 @@
+package com.moscait.qwatcher;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the brotli/gzip variants the web UI build writes next to each asset
+ * (see vite.config.ts), chosen by Accept-Encoding, so nothing is compressed
+ * per request. Content-hashed assets get a long-lived immutable Cache-Control
+ * and HTML a revalidating one. Requests without a matching variant fall
+ * through to Quinoa with the same caching headers.
+ * <p>
+ * All variants are loaded once at startup from the list the build writes
+ * (precompressed.txt), so requests never touch the classpath on the event loop.
+ */
+@ApplicationScoped
+public class WebUiAssetRoutes {
+
+    private static final Logger LOG = Logger.getLogger(WebUiAssetRoutes.class);
+
+    // Vite's default output name for hashed assets: /assets/<name>-<hash>.<ext>
+    private static final Pattern HASHED_ASSET = Pattern.compile("^/assets/.+-[A-Za-z0-9_-]{8,}\\.[a-z0-9]+$");
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "no-cache";
+    private static final String MANIFEST = "/precompressed.txt";
+
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            ".html", "text/html; charset=utf-8",
+            ".js", "text/javascript; charset=utf-8",
+            ".css", "text/css; charset=utf-8",
+            ".svg", "image/svg+xml",
+            ".json", "application/json",
+            ".txt", "text/plain; charset=utf-8",
+            ".ico", "image/x-icon");
+
+    @ConfigProperty(name = "qwatcher.webui.resource-root", defaultValue = "META-INF/webui")
+    String resourceRoot;
+
+    private record Variant(byte[] body, String etag) {
+    }
+
+    // Every built variant, keyed by "<path>.<br|gz>"; read-only after startup
+    private volatile Map<String, Variant> variants = Map.of();
+
+    void registerRoutes(@Observes Router router) {
+        variants = preload();
+        router.routeWithRegex("^(?!/api/|/q/).*")
+                .method(HttpMethod.GET)
+                .method(HttpMethod.HEAD)
+                .order(-100)
+                .handler(this::handle);
+    }
+
+    private void handle(RoutingContext ctx) {
+        String path = ctx.normalizedPath();
+        String file = path.endsWith("/") ? path + "index.html" : path;
+        String cacheControl = HASHED_ASSET.matcher(file).matches() ? IMMUTABLE
+                : file.endsWith(".html") ? REVALIDATE : null;
+
+        String contentType = contentType(file);
+        String encoding = contentType != null ? negotiate(ctx.request().getHeader(HttpHeaders.ACCEPT_ENCODING), file)
+                : null;
+        if (encoding == null) {
+            if (contentType != null || cacheControl != null) {
+                ctx.addHeadersEndHandler(v -> {
+                    HttpServerResponse response = ctx.response();
+                    if (cacheControl != null && response.getStatusCode() == 200) {
+                        response.putHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+                    }
+                    // Another Accept-Encoding may have got a variant, so caches must key on it
+                    if (contentType != null && !variesOnEncoding(response)) {
+                        response.headers().add(HttpHeaders.VARY, "Accept-Encoding");
+                    }
+                });
+            }
+            ctx.next();
+            return;
+        }
+
+        Variant variant = variants.get(file + "." + encoding);
+        HttpServerResponse response = ctx.response()
+                .putHeader(HttpHeaders.CONTENT_TYPE, contentType)
+                .putHeader(HttpHeaders.CONTENT_ENCODING, "br".equals(encoding) ? "br" : "gzip")
+                .putHeader(HttpHeaders.VARY, "Accept-Encoding")
+                .putHeader(HttpHeaders.ETAG, variant.etag());
+        if (cacheControl != null) {
+            response.putHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+
+        if (variant.etag().equals(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatusCode(304).end();
+        } else if (ctx.request().method() == HttpMethod.HEAD) {
+            response.putHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(variant.body().length)).end();
+        } else {
+            response.end(Buffer.buffer(variant.body()));
+        }
+    }
+
+    /**
+     * Picks the built variant whose coding the client rates highest by q-value,
+     * "br" over "gz" on a tie; null if it accepts neither.
+     */
+    private String negotiate(String acceptEncoding, String file) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double br = -1;
+        double gzip = -1;
+        double any = -1;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            switch (parts[0].trim().toLowerCase()) {
+                case "br" -> br = quality(parts);
+                case "gzip" -> gzip = quality(parts);
+                case "*" -> any = quality(parts);
+                default -> {
+                }
+            }
+        }
+        // "*" covers the codings not listed by name
+        br = variants.containsKey(file + ".br") ? (br >= 0 ? br : any) : 0;
+        gzip = variants.containsKey(file + ".gz") ? (gzip >= 0 ? gzip : any) : 0;
+        if (br > 0 && br >= gzip) {
+            return "br";
+        }
+        return gzip > 0 ? "gz" : null;
+    }
+
+    /** The q-value of one Accept-Encoding entry split at ';'; 1 if absent, 0 if malformed. */
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].replace(" ", "").toLowerCase();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static boolean variesOnEncoding(HttpServerResponse response) {
+        for (String vary : response.headers().getAll(HttpHeaders.VARY)) {
+            if (vary.toLowerCase().contains("accept-encoding") || vary.trim().equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Reads every variant listed in the build's manifest; an empty map if there is none. */
+    private Map<String, Variant> preload() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        InputStream manifest = loader.getResourceAsStream(resourceRoot + MANIFEST);
+        if (manifest == null) {
+            LOG.info("No pre-compressed web UI assets under " + resourceRoot);
+            return Map.of();
+        }
+
+        Map<String, Variant> loaded = new HashMap<>();
+        long bytes = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(manifest, StandardCharsets.UTF_8))) {
+            String file;
+            while ((file = reader.readLine()) != null) {
+                if (file.isBlank()) {
+                    continue;
+                }
+                for (String extension : new String[] { "br", "gz" }) {
+                    String resource = resourceRoot + file + "." + extension;
+                    try (InputStream in = loader.getResourceAsStream(resource)) {
+                        if (in == null) {
+                            LOG.warn("Pre-compressed asset " + resource + " is listed but missing");
+                            continue;
+                        }
+                        byte[] body = in.readAllBytes();
+                        loaded.put(file + "." + extension, new Variant(body, etag(body)));
+                        bytes += body.length;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to load pre-compressed web UI assets: " + e.getMessage());
+        }
+        LOG.infof("Loaded %d pre-compressed web UI assets (%d bytes)", loaded.size(), bytes);
+        return Map.copyOf(loaded);
+    }
+
+    private static String contentType(String file) {
+        int dot = file.lastIndexOf('.');
+        return dot < 0 ? null : CONTENT_TYPES.get(file.substring(dot));
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 8) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.moscait.qwatcher.model;
+
+public record CircuitBreakerStatus(String deviceId, String state, int consecutiveFailures, Long openedAt,
+        Long retryAt, String lastError) {
+    public static final String STATE_CLOSED = "CLOSED";
+    public static final String STATE_OPEN = "OPEN";
+    public static final String STATE_HALF_OPEN = "HALF_OPEN";
+}
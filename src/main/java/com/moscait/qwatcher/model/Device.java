@@ -6,6 +6,7 @@ public class Device {
     public String type;
     public String status;
     public String state;
+    // Epoch seconds when BlueZ last listed the device, or when it was added by hand
     public long lastSeen;
 
     public Device() {
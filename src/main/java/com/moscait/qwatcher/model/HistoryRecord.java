@@ -0,0 +1,18 @@
+package com.moscait.qwatcher.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One line of the monitor history: an event (type INFO, WARNING, ...), a
+ * power-cycle state transition (type MONITORING, OFF, ...), or the summary
+ * closing an aggregated event, which carries its final count and
+ * {@code firstSeen}/{@code lastSeen}. {@code seq} increases monotonically and
+ * doubles as the export cursor.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record HistoryRecord(long seq, long timestamp, String kind, String type, String message, int count,
+        Long firstSeen, Long lastSeen) {
+    public static final String KIND_EVENT = "event";
+    public static final String KIND_TRANSITION = "transition";
+    public static final String KIND_SUMMARY = "summary";
+}
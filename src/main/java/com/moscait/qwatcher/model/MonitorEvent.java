@@ -1,6 +1,11 @@
 package com.moscait.qwatcher.model;
 
-public record MonitorEvent(long timestamp, String type, String message) {
+/**
+ * One entry of the monitor's event log. Repeats of the same event within the
+ * aggregation window are collapsed: {@code count} says how often it occurred,
+ * {@code firstSeen} when it first did and {@code timestamp} when it last did.
+ */
+public record MonitorEvent(long timestamp, String type, String message, int count, long firstSeen) {
     public static final String TYPE_INFO = "INFO";
     public static final String TYPE_WARNING = "WARNING";
     public static final String TYPE_ERROR = "ERROR";
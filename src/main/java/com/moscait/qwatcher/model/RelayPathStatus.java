@@ -0,0 +1,5 @@
+package com.moscait.qwatcher.model;
+
+public record RelayPathStatus(String deviceId, String driver, boolean healthy, long lastLatencyMs,
+        long averageLatencyMs, long successes, long failures, Long lastFailureAt, String lastError) {
+}
@@ -0,0 +1,50 @@
+package com.moscait.qwatcher.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of BlueZ that {@link BluetoothService} talks to. The production
+ * implementation is {@link BluezDbusGateway}; the load tests substitute a
+ * simulated radio so the service's own index, breakers and drivers run
+ * unchanged.
+ */
+interface BleGateway {
+
+    /** Starts discovery unless it is already running. */
+    void ensureDiscovering() throws Exception;
+
+    /** Devices BlueZ currently knows about. */
+    List<DeviceHandle> devices();
+
+    interface DeviceHandle {
+
+        String address();
+
+        String name();
+
+        String objectPath();
+
+        boolean isConnected();
+
+        boolean isServicesResolved();
+
+        Boolean isPaired();
+
+        void connect() throws Exception;
+
+        void disconnect() throws Exception;
+
+        /** The GATT characteristic with the given UUID, or null if the device doesn't expose it. */
+        Characteristic characteristic(String uuid);
+    }
+
+    interface Characteristic {
+
+        List<String> flags();
+
+        void write(byte[] value, Map<String, Object> options) throws Exception;
+
+        byte[] read() throws Exception;
+    }
+}
@@ -0,0 +1,133 @@
+package com.moscait.qwatcher.service;
+
+import com.github.hypfvieh.bluetooth.DeviceManager;
+import com.github.hypfvieh.bluetooth.wrapper.BluetoothAdapter;
+import com.github.hypfvieh.bluetooth.wrapper.BluetoothDevice;
+import com.github.hypfvieh.bluetooth.wrapper.BluetoothGattCharacteristic;
+import com.github.hypfvieh.bluetooth.wrapper.BluetoothGattService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link BleGateway} over the BlueZ D-Bus API (bluez-dbus).
+ */
+final class BluezDbusGateway implements BleGateway {
+
+    private final DeviceManager deviceManager;
+
+    BluezDbusGateway(DeviceManager deviceManager) {
+        this.deviceManager = deviceManager;
+    }
+
+    @Override
+    public void ensureDiscovering() {
+        BluetoothAdapter adapter = deviceManager.getAdapter();
+        if (adapter != null && !Boolean.TRUE.equals(adapter.isDiscovering())) {
+            adapter.startDiscovery();
+        }
+    }
+
+    @Override
+    public List<DeviceHandle> devices() {
+        List<DeviceHandle> devices = new ArrayList<>();
+        for (BluetoothDevice device : deviceManager.getDevices()) {
+            devices.add(new Device(device));
+        }
+        return devices;
+    }
+
+    private static final class Device implements DeviceHandle {
+
+        private final BluetoothDevice device;
+
+        Device(BluetoothDevice device) {
+            this.device = device;
+        }
+
+        @Override
+        public String address() {
+            return device.getAddress();
+        }
+
+        @Override
+        public String name() {
+            return device.getName();
+        }
+
+        @Override
+        public String objectPath() {
+            return device.getDbusPath();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return Boolean.TRUE.equals(device.isConnected());
+        }
+
+        @Override
+        public boolean isServicesResolved() {
+            return Boolean.TRUE.equals(device.isServicesResolved());
+        }
+
+        @Override
+        public Boolean isPaired() {
+            return device.isPaired();
+        }
+
+        @Override
+        public void connect() {
+            device.connect();
+        }
+
+        @Override
+        public void disconnect() {
+            device.disconnect();
+        }
+
+        @Override
+        public Characteristic characteristic(String uuid) {
+            List<BluetoothGattService> services = device.getGattServices();
+            if (services == null)
+                return null;
+
+            for (BluetoothGattService s : services) {
+                List<BluetoothGattCharacteristic> chars = s.getGattCharacteristics();
+                if (chars == null)
+                    continue;
+                for (BluetoothGattCharacteristic c : chars) {
+                    if (c.getUuid().equalsIgnoreCase(uuid)) {
+                        return new GattCharacteristic(c);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class GattCharacteristic implements Characteristic {
+
+        private final BluetoothGattCharacteristic characteristic;
+
+        GattCharacteristic(BluetoothGattCharacteristic characteristic) {
+            this.characteristic = characteristic;
+        }
+
+        @Override
+        public List<String> flags() {
+            return characteristic.getFlags();
+        }
+
+        @Override
+        public void write(byte[] value, Map<String, Object> options) throws Exception {
+            characteristic.writeValue(value, options);
+        }
+
+        @Override
+        public byte[] read() throws Exception {
+            return characteristic.readValue(new HashMap<>());
+        }
+    }
+}
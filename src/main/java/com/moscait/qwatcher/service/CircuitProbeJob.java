@@ -0,0 +1,23 @@
+package com.moscait.qwatcher.service;
+
+import io.quarkus.scheduler.Scheduled;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Schedules the circuit breaker probes. Kept off {@link BluetoothService} so
+ * the schedule runs on whichever BluetoothService bean is active; a schedule
+ * declared there would fire on the base bean even when a subclass replaces it.
+ */
+@ApplicationScoped
+public class CircuitProbeJob {
+
+    @Inject
+    BluetoothService bluetoothService;
+
+    @Scheduled(every = "{qwatcher.bluetooth.breaker.probe-interval:15s}",
+            concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    void probeOpenCircuits() {
+        bluetoothService.probeOpenCircuits();
+    }
+}
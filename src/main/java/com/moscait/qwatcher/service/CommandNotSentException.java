@@ -0,0 +1,17 @@
+package com.moscait.qwatcher.service;
+
+/**
+ * A relay command that failed before anything was sent to the device, e.g.
+ * it is not in the BlueZ cache, its circuit is open or its HTTP host refused
+ * the connection. The relay is known to be unchanged.
+ */
+public class CommandNotSentException extends Exception {
+
+    public CommandNotSentException(String message) {
+        super(message);
+    }
+
+    public CommandNotSentException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,77 @@
+package com.moscait.qwatcher.service;
+
+import com.moscait.qwatcher.model.CircuitBreakerStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Per-device circuit breaker. After {@code failureThreshold} consecutive
+ * failures the circuit opens and requests fail fast; once the open period
+ * has passed a background probe moves it to HALF_OPEN and either closes it
+ * again or re-opens it.
+ */
+final class DeviceCircuitBreaker {
+
+    private final String deviceId;
+    private final int failureThreshold;
+    private final Duration openDuration;
+
+    private String state = CircuitBreakerStatus.STATE_CLOSED;
+    private int consecutiveFailures;
+    private Instant openedAt;
+    private String lastError;
+
+    DeviceCircuitBreaker(String deviceId, int failureThreshold, Duration openDuration) {
+        this.deviceId = deviceId;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    synchronized boolean allowRequest() {
+        return CircuitBreakerStatus.STATE_CLOSED.equals(state);
+    }
+
+    synchronized Duration retryIn() {
+        if (openedAt == null) {
+            return Duration.ZERO;
+        }
+        Duration remaining = Duration.between(Instant.now(), openedAt.plus(openDuration));
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * Moves an OPEN circuit whose open period has elapsed to HALF_OPEN.
+     * Returns true if the caller should now probe the device.
+     */
+    synchronized boolean tryStartProbe() {
+        if (CircuitBreakerStatus.STATE_OPEN.equals(state) && retryIn().isZero()) {
+            state = CircuitBreakerStatus.STATE_HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void recordSuccess() {
+        state = CircuitBreakerStatus.STATE_CLOSED;
+        consecutiveFailures = 0;
+        openedAt = null;
+        lastError = null;
+    }
+
+    synchronized void recordFailure(String error) {
+        consecutiveFailures++;
+        lastError = error;
+        if (CircuitBreakerStatus.STATE_HALF_OPEN.equals(state) || consecutiveFailures >= failureThreshold) {
+            state = CircuitBreakerStatus.STATE_OPEN;
+            openedAt = Instant.now();
+        }
+    }
+
+    synchronized CircuitBreakerStatus snapshot() {
+        return new CircuitBreakerStatus(deviceId, state, consecutiveFailures,
+                openedAt != null ? openedAt.toEpochMilli() : null,
+                openedAt != null ? openedAt.plus(openDuration).toEpochMilli() : null,
+                lastError);
+    }
+}
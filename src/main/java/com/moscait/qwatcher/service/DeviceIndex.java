@@ -0,0 +1,250 @@
+package com.moscait.qwatcher.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Device table keyed by MAC address parsed to a primitive {@code long}.
+ * Open addressing with linear probing keeps lookups O(1) without boxing, so
+ * the index stays small even with thousands of BLE advertisers in range.
+ * All addresses leave the index in one canonical form ("AA:BB:CC:DD:EE:FF").
+ */
+final class DeviceIndex {
+
+    /** Returned by {@link #tryParseMac(String)} for an invalid address. */
+    static final long NO_MAC = -1L;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    static final class Entry {
+        final long mac;
+        volatile String objectPath;
+        volatile BleGateway.DeviceHandle handle;
+        volatile String name;
+        volatile boolean manual;
+        volatile String state = "UNKNOWN";
+        // Epoch seconds of the last refresh that found the device in BlueZ's list (or of
+        // adding it by hand); BlueZ's cache outlives advertisements, so this is no RSSI age
+        volatile long lastListed;
+        int generation;
+        // Held for the length of one GATT RPC; fair so pollers can't starve a command.
+        // Created on first RPC, so the advertisers that only pass through cost nothing
+        private volatile ReentrantLock rpcLock;
+
+        Entry(long mac) {
+            this.mac = mac;
+        }
+
+        String address() {
+            return formatMac(mac);
+        }
+
+        ReentrantLock rpcLock() {
+            ReentrantLock lock = rpcLock;
+            if (lock == null) {
+                synchronized (this) {
+                    lock = rpcLock;
+                    if (lock == null) {
+                        lock = new ReentrantLock(true);
+                        rpcLock = lock;
+                    }
+                }
+            }
+            return lock;
+        }
+
+        /** Whether an RPC to the device is in flight right now. */
+        boolean rpcInFlight() {
+            ReentrantLock lock = rpcLock;
+            return lock != null && lock.isLocked();
+        }
+    }
+
+    private long[] keys;
+    private Entry[] values;
+    private int size;
+
+    DeviceIndex() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    static long tryParseMac(String address) {
+        if (address == null || address.length() != 17) {
+            return NO_MAC;
+        }
+        long mac = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = address.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':' && c != '-') {
+                    return NO_MAC;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return NO_MAC;
+            }
+            mac = (mac << 4) | digit;
+        }
+        return mac;
+    }
+
+    static long parseMac(String address) {
+        long mac = tryParseMac(address);
+        if (mac == NO_MAC) {
+            throw new IllegalArgumentException("Invalid MAC address: " + address);
+        }
+        return mac;
+    }
+
+    static String formatMac(long mac) {
+        char[] out = new char[17];
+        for (int i = 0; i < 6; i++) {
+            int b = (int) (mac >>> (40 - 8 * i)) & 0xFF;
+            out[i * 3] = Character.toUpperCase(Character.forDigit(b >>> 4, 16));
+            out[i * 3 + 1] = Character.toUpperCase(Character.forDigit(b & 0xF, 16));
+            if (i < 5) {
+                out[i * 3 + 2] = ':';
+            }
+        }
+        return new String(out);
+    }
+
+    /** Canonical form of the address, or null if it is not a valid MAC. */
+    static String canonical(String address) {
+        long mac = tryParseMac(address);
+        return mac == NO_MAC ? null : formatMac(mac);
+    }
+
+    synchronized Entry get(long mac) {
+        int i = indexOf(mac);
+        return i < 0 ? null : values[i];
+    }
+
+    synchronized Entry getOrCreate(long mac) {
+        int i = indexOf(mac);
+        if (i >= 0) {
+            return values[i];
+        }
+        if ((size + 1) * 3 > keys.length * 2) {
+            grow();
+        }
+        Entry entry = new Entry(mac);
+        insert(mac, entry);
+        return entry;
+    }
+
+    synchronized void remove(long mac) {
+        int i = indexOf(mac);
+        if (i < 0) {
+            return;
+        }
+        keys[i] = NO_MAC;
+        values[i] = null;
+        size--;
+
+        // Backward-shift following entries so probe chains stay unbroken
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == NO_MAC) {
+                return;
+            }
+            int home = slot(keys[j]);
+            boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!between) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = NO_MAC;
+                values[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Drops discovered entries not seen in the given refresh generation. Manual
+     * entries stay but lose their BlueZ handle, which no longer points anywhere.
+     */
+    synchronized void retainGeneration(int generation) {
+        List<Long> stale = new ArrayList<>();
+        for (Entry entry : values) {
+            if (entry == null || entry.generation == generation) {
+                continue;
+            }
+            if (entry.manual) {
+                entry.handle = null;
+                entry.objectPath = null;
+            } else {
+                stale.add(entry.mac);
+            }
+        }
+        for (long mac : stale) {
+            remove(mac);
+        }
+    }
+
+    synchronized List<Entry> entries() {
+        List<Entry> result = new ArrayList<>(size);
+        for (Entry entry : values) {
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private int slot(long mac) {
+        long h = mac * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (keys.length - 1);
+    }
+
+    private int indexOf(long mac) {
+        int mask = keys.length - 1;
+        for (int i = slot(mac);; i = (i + 1) & mask) {
+            if (keys[i] == mac) {
+                return i;
+            }
+            if (keys[i] == NO_MAC) {
+                return -1;
+            }
+        }
+    }
+
+    private void insert(long mac, Entry entry) {
+        int mask = keys.length - 1;
+        int i = slot(mac);
+        while (keys[i] != NO_MAC) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = mac;
+        values[i] = entry;
+        size++;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Entry[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != NO_MAC) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, NO_MAC);
+        values = new Entry[capacity];
+        size = 0;
+    }
+}
@@ -0,0 +1,156 @@
+package com.moscait.qwatcher.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives Shelly Gen2 relays through their local HTTP JSON-RPC endpoint
+ * ({@code POST http://<host>/rpc}). One shared {@link HttpClient} keeps
+ * connections alive between calls. Only devices with a known host are
+ * supported; everything else falls through to BLE.
+ */
+@ApplicationScoped
+public class HttpRpcRelayDriver implements RelayDriver {
+
+    private static final Logger LOG = Logger.getLogger(HttpRpcRelayDriver.class);
+
+    // Device MAC to "host[:port]", e.g. 88:13:BF:D6:84:86=192.168.1.50
+    @ConfigProperty(name = "qwatcher.relay.http.hosts")
+    Optional<List<String>> configHosts;
+
+    @ConfigProperty(name = "qwatcher.relay.http.timeout-ms", defaultValue = "1500")
+    long timeoutMs;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    private final Map<String, String> hosts = new ConcurrentHashMap<>();
+    private final AtomicInteger requestId = new AtomicInteger();
+    private HttpClient client;
+
+    @PostConstruct
+    void init() {
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(timeoutMs))
+                .build();
+
+        for (String mapping : configHosts.orElse(List.of())) {
+            int sep = mapping.indexOf('=');
+            if (sep <= 0 || sep == mapping.length() - 1) {
+                LOG.warn("Ignoring malformed relay host mapping: " + mapping);
+                continue;
+            }
+            registerHost(mapping.substring(0, sep).trim(), mapping.substring(sep + 1).trim());
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        // Stops the client's selector thread and drops its pooled connections
+        client.close();
+    }
+
+    public void registerHost(String address, String host) {
+        String key = DeviceIndex.canonical(address);
+        if (key == null) {
+            throw new IllegalArgumentException("Invalid MAC address: " + address);
+        }
+        if (host == null || host.isBlank()) {
+            hosts.remove(key);
+        } else {
+            hosts.put(key, host);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "http";
+    }
+
+    @Override
+    public boolean supports(String address) {
+        String key = DeviceIndex.canonical(address);
+        return key != null && hosts.containsKey(key);
+    }
+
+    @Override
+    public void setRelay(String address, boolean on) throws Exception {
+        ObjectNode params = objectMapper.createObjectNode();
+        params.put("id", 0);
+        params.put("on", on);
+        call(address, "Switch.Set", params);
+    }
+
+    @Override
+    public String getRelayState(String address) throws Exception {
+        ObjectNode params = objectMapper.createObjectNode();
+        params.put("id", 0);
+        JsonNode output = call(address, "Switch.GetStatus", params).get("output");
+        if (output == null || !output.isBoolean()) {
+            return "UNKNOWN";
+        }
+        return output.asBoolean() ? "ON" : "OFF";
+    }
+
+    private JsonNode call(String address, String method, ObjectNode params) throws Exception {
+        String host = hosts.get(DeviceIndex.canonical(address));
+        if (host == null) {
+            throw new Exception("No HTTP host configured for " + address);
+        }
+
+        ObjectNode json = objectMapper.createObjectNode();
+        json.put("id", requestId.incrementAndGet());
+        json.put("src", "qwatcher");
+        json.put("method", method);
+        json.set("params", params);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://" + host + "/rpc"))
+                .timeout(Duration.ofMillis(timeoutMs))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json.toString()))
+                .build();
+
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (ConnectException | HttpConnectTimeoutException e) {
+            // Refused or timed out while connecting: the request never left this host
+            throw new CommandNotSentException(method + " via HTTP could not connect to " + host, e);
+        }
+        if (response.statusCode() != 200) {
+            throw new Exception(method + " via HTTP returned status " + response.statusCode());
+        }
+
+        JsonNode body = objectMapper.readTree(response.body());
+        JsonNode error = body.get("error");
+        if (error != null) {
+            throw new Exception(method + " via HTTP failed: " + error.path("message").asText(error.toString()));
+        }
+        JsonNode result = body.get("result");
+        if (result == null) {
+            throw new Exception(method + " via HTTP returned no result");
+        }
+        return result;
+    }
+}
@@ -1,31 +1,48 @@
 package com.moscait.qwatcher.service;
 
+import com.moscait.qwatcher.model.HistoryRecord;
 import com.moscait.qwatcher.model.MonitorEvent;
+import io.quarkus.runtime.StartupEvent;
 import io.quarkus.scheduler.Scheduled;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.jboss.logging.Logger;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 @ApplicationScoped
 public class InternetMonitorService {
 
     private static final Logger LOG = Logger.getLogger(InternetMonitorService.class);
 
+    // Wait before retrying a failed turn-on; doubles with each failure up to the cap
+    private static final Duration TURN_ON_RETRY_DELAY = Duration.ofMinutes(1);
+    private static final Duration MAX_TURN_ON_RETRY_DELAY = Duration.ofMinutes(30);
+
     @Inject
     HostService hostService;
 
     @Inject
     BluetoothService bluetoothService;
 
+    @Inject
+    PowerCycleJournal journal;
+
+    @Inject
+    MonitorHistory history;
+
     @ConfigProperty(name = "qwatcher.monitor.internet.offline-threshold-minutes", defaultValue = "5")
     int configOfflineThresholdMinutes;
 
@@ -35,17 +52,35 @@ public class InternetMonitorService {
     @ConfigProperty(name = "qwatcher.monitor.internet.target-device-id", defaultValue = "")
     String configTargetDeviceId;
 
+    @ConfigProperty(name = "qwatcher.monitor.event-aggregation-window-minutes", defaultValue = "60")
+    int eventAggregationWindowMinutes;
+
     // Runtime configurable settings
-    private int currentOfflineThreshold;
-    private int currentPowerCycleDelay;
-    private String currentTargetDeviceId;
+    private volatile int currentOfflineThreshold;
+    private volatile int currentPowerCycleDelay;
+    private volatile String currentTargetDeviceId;
+
+    // Serializes power-cycle steps, which hold it across relay I/O. State fields and the
+    // resume task are guarded by "this", which is never held while talking to the plug,
+    // so settings updates and status reads don't wait on BLE/HTTP.
+    private final Object cycleLock = new Object();
 
-    private Instant lastOnlineTime = Instant.now();
-    private Instant deviceTurnedOffAt = null;
-    private boolean deviceCurrentlyOff = false;
+    // Power-cycle state machine, persisted through the journal
+    private volatile PowerCycleState state = PowerCycleState.MONITORING;
+    private volatile Instant deviceTurnedOffAt = null;
+    // Device that was actually turned off; may differ from the current target after a settings change
+    private volatile String cycleDeviceId;
+    private volatile Instant lastOnlineTime = Instant.now();
+    // Consecutive failed turn-ons and when the next may run, guarded by cycleLock
+    private int failedTurnOns;
+    private Instant nextTurnOnAt;
 
-    // Circular buffer for events, synchronized for thread safety
-    private final List<MonitorEvent> eventLog = Collections.synchronizedList(new ArrayList<>());
+    // Fires the turn-on exactly when the delay elapses instead of waiting for the next cron tick
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> resumeTask;
+
+    // Bounded event log; repeats of the same event collapse into one entry
+    private MonitorEventLog eventLog;
     private static final int MAX_LOG_SIZE = 100;
 
     @PostConstruct
@@ -53,31 +88,119 @@ public class InternetMonitorService {
         this.currentOfflineThreshold = configOfflineThresholdMinutes;
         this.currentPowerCycleDelay = configPowerCycleDelayMinutes;
         this.currentTargetDeviceId = configTargetDeviceId;
-        logEvent(MonitorEvent.TYPE_INFO, "Monitor initialized. Threshold: " + currentOfflineThreshold + "m, Delay: "
-                + currentPowerCycleDelay + "m");
+        this.eventLog = new MonitorEventLog(MAX_LOG_SIZE, Duration.ofMinutes(eventAggregationWindowMinutes),
+                history::appendSummary);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "qwatcher-power-cycle");
+            t.setDaemon(true);
+            return t;
+        });
+        logEvent(MonitorEvent.TYPE_INFO, "Monitor initialized. Threshold: %dm, Delay: %dm", currentOfflineThreshold,
+                currentPowerCycleDelay);
     }
 
-    private void logEvent(String type, String message) {
-        synchronized (eventLog) {
-            MonitorEvent event = new MonitorEvent(System.currentTimeMillis(), type, message);
-            eventLog.add(0, event); // Add to head
-            if (eventLog.size() > MAX_LOG_SIZE) {
-                eventLog.remove(eventLog.size() - 1);
-            }
-        }
+    @PreDestroy
+    void tearDown() {
+        timer.shutdownNow();
+        // Keep the final counts of repeats still being aggregated
+        eventLog.closeAll();
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        // Reconcile off the startup thread; querying the plug over BLE can take seconds
+        timer.execute(this::recover);
+    }
 
-        // Log to system log as well
+    /**
+     * Records an event. {@code template} is a {@link String#format} pattern and
+     * must not be built by concatenation, so repeats can be aggregated.
+     */
+    private void logEvent(String type, String template, Object... args) {
+        int count = eventLog.record(type, template, args);
+
+        // Log to system log and history as well; repeats only at 2, 4, 8, ... occurrences, the final
+        // count follows as a summary record once the repeats end
+        if (Integer.bitCount(count) != 1) {
+            LOG.debugf(template, args);
+            return;
+        }
+        history.append(HistoryRecord.KIND_EVENT, type, args.length == 0 ? template : String.format(template, args),
+                count);
+        String format = count == 1 ? template : template + " (repeated %d times)";
+        Object[] params = count == 1 ? args : appendCount(args, count);
         if (MonitorEvent.TYPE_ERROR.equals(type)) {
-            LOG.error(message);
+            LOG.errorf(format, params);
         } else if (MonitorEvent.TYPE_WARNING.equals(type)) {
-            LOG.warn(message);
+            LOG.warnf(format, params);
         } else {
-            LOG.info(message);
+            LOG.infof(format, params);
         }
     }
 
+    private static Object[] appendCount(Object[] args, int count) {
+        Object[] params = Arrays.copyOf(args, args.length + 1);
+        params[args.length] = count;
+        return params;
+    }
+
+    /**
+     * Restores the power-cycle state from the journal after a restart and
+     * reconciles it against the plug's actual relay state.
+     */
+    void recover() {
+        synchronized (cycleLock) {
+            PowerCycleJournal.Entry last = journal.readLast();
+            if (last == null || last.state() == PowerCycleState.MONITORING) {
+                return;
+            }
+
+            logEvent(MonitorEvent.TYPE_INFO, "Recovering power cycle from %s.", last.state());
+            long offAt = last.state() == PowerCycleState.TURNING_OFF ? last.timestamp() : last.turnedOffAt();
+            reconcile(last.targetDeviceId(), Instant.ofEpochMilli(offAt));
+        }
+    }
+
+    /**
+     * Settles an interrupted or failed step by asking the plug for its actual
+     * relay state. {@code offAt} is when the device went (or may have gone) off.
+     */
+    private void reconcile(String deviceId, Instant offAt) {
+        if (DeviceIndex.canonical(deviceId) == null) {
+            // No command can ever reach it, so there is nothing to turn back on
+            transition(PowerCycleState.MONITORING, deviceId, null);
+            logEvent(MonitorEvent.TYPE_ERROR, "Device %s is not a valid MAC address, resuming monitoring.",
+                    deviceId);
+            return;
+        }
+
+        String actualState = bluetoothService.getDeviceState(deviceId);
+        if ("ON".equals(actualState)) {
+            // Either the OFF command never landed or the ON command already did
+            transition(PowerCycleState.MONITORING, deviceId, null);
+            logEvent(MonitorEvent.TYPE_SUCCESS, "Device %s is ON, resuming monitoring.", deviceId);
+            return;
+        }
+
+        // Treat OFF and UNKNOWN alike: sending ON to a plug that is already on is harmless,
+        // leaving the router dark is not.
+        transition(PowerCycleState.OFF, deviceId, offAt);
+        logEvent(MonitorEvent.TYPE_WARNING, "Device %s reports %s, will turn it ON after the power cycle delay.",
+                deviceId, actualState);
+        Instant now = Instant.now();
+        lastOnlineTime = now;
+        scheduleResume(remainingDelay(now));
+    }
+
     @Scheduled(cron = "{qwatcher.monitor.internet.check-cron:0 */5 * * * ?}")
     void checkInternetAndManageDevice() {
+        // Repeats that have stopped get their closing history record even when nothing new is logged
+        eventLog.closeExpired();
+        synchronized (cycleLock) {
+            checkInternet();
+        }
+    }
+
+    private void checkInternet() {
         try {
             boolean internetAvailable = hostService.isInternetAvailable();
             Instant now = Instant.now();
@@ -86,22 +209,12 @@ public class InternetMonitorService {
                 lastOnlineTime = now;
             }
 
-            if (deviceCurrentlyOff && deviceTurnedOffAt != null) {
+            if (state == PowerCycleState.OFF && deviceTurnedOffAt != null) {
                 // Device is OFF. Check if it's time to turn it ON.
                 // This happens regardless of internet status (since router is off, internet is
                 // likely off)
-                long minutesOff = (now.getEpochSecond() - deviceTurnedOffAt.getEpochSecond()) / 60;
-
-                if (minutesOff >= currentPowerCycleDelay) {
-                    logEvent(MonitorEvent.TYPE_INFO,
-                            "Power cycle delay elapsed (" + minutesOff + "m). Turning device ON.");
-                    turnDeviceOn();
-
-                    // Reset lastOnlineTime to NOW to give a grace period for the router/modem to
-                    // boot up.
-                    // Otherwise, the very next check might find it "offline for > threshold" and
-                    // turn it off again.
-                    lastOnlineTime = now;
+                if (remainingDelay(now).isZero()) {
+                    resumeIfDue();
                 }
             } else {
                 // Device is ON. Monitoring internet.
@@ -109,16 +222,88 @@ public class InternetMonitorService {
                     long minutesOffline = (now.getEpochSecond() - lastOnlineTime.getEpochSecond()) / 60;
 
                     if (minutesOffline >= currentOfflineThreshold) {
-                        logEvent(MonitorEvent.TYPE_WARNING, "Internet offline for " + minutesOffline + "m (threshold: "
-                                + currentOfflineThreshold + "m). Turning device OFF.");
+                        logEvent(MonitorEvent.TYPE_WARNING,
+                                "Internet offline for %dm (threshold: %dm). Turning device OFF.", minutesOffline,
+                                currentOfflineThreshold);
                         turnDeviceOff();
                     }
                 }
             }
 
         } catch (Exception e) {
-            logEvent(MonitorEvent.TYPE_ERROR, "Error in monitor task: " + e.getMessage());
+            logEvent(MonitorEvent.TYPE_ERROR, "Error in monitor task: %s", e.getMessage());
+        }
+    }
+
+    private void resumePowerCycle() {
+        synchronized (cycleLock) {
+            resumeIfDue();
+        }
+    }
+
+    private void resumeIfDue() {
+        if (state != PowerCycleState.OFF || deviceTurnedOffAt == null) {
+            return;
+        }
+        Instant now = Instant.now();
+        Duration remaining = remainingDelay(now);
+        if (nextTurnOnAt != null && now.isBefore(nextTurnOnAt)) {
+            // Backing off after a failed turn-on
+            remaining = Duration.between(now, nextTurnOnAt);
+        }
+        if (!remaining.isZero()) {
+            // Settings changed since this task was scheduled
+            scheduleResume(remaining);
+            return;
+        }
+
+        long minutesOff = Duration.between(deviceTurnedOffAt, now).toMinutes();
+        logEvent(MonitorEvent.TYPE_INFO, "Power cycle delay elapsed (%dm). Turning device ON.", minutesOff);
+        turnDeviceOn();
+
+        if (state == PowerCycleState.OFF) {
+            Duration retry = turnOnRetryDelay(++failedTurnOns);
+            nextTurnOnAt = now.plus(retry);
+            scheduleResume(retry);
+        } else {
+            failedTurnOns = 0;
+            nextTurnOnAt = null;
+        }
+
+        // Reset lastOnlineTime to NOW to give a grace period for the router/modem to
+        // boot up.
+        // Otherwise, the very next check might find it "offline for > threshold" and
+        // turn it off again.
+        lastOnlineTime = now;
+    }
+
+    /** Delay before the next turn-on after {@code failures} consecutive failed ones. */
+    static Duration turnOnRetryDelay(int failures) {
+        int doublings = Math.min(failures - 1, 16);
+        Duration delay = TURN_ON_RETRY_DELAY.multipliedBy(1L << doublings);
+        return delay.compareTo(MAX_TURN_ON_RETRY_DELAY) < 0 ? delay : MAX_TURN_ON_RETRY_DELAY;
+    }
+
+    private Duration remainingDelay(Instant now) {
+        Duration remaining = Duration.between(now, deviceTurnedOffAt.plus(Duration.ofMinutes(currentPowerCycleDelay)));
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    private synchronized void scheduleResume(Duration delay) {
+        if (resumeTask != null) {
+            resumeTask.cancel(false);
         }
+        resumeTask = timer.schedule(this::resumePowerCycle, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void transition(PowerCycleState next, String deviceId, Instant turnedOffAt) {
+        Instant now = Instant.now();
+        journal.append(new PowerCycleJournal.Entry(now.toEpochMilli(), next, deviceId,
+                turnedOffAt != null ? turnedOffAt.toEpochMilli() : 0));
+        history.append(HistoryRecord.KIND_TRANSITION, next.name(), deviceId, 1);
+        state = next;
+        cycleDeviceId = deviceId;
+        deviceTurnedOffAt = turnedOffAt;
     }
 
     private void turnDeviceOff() {
@@ -127,29 +312,51 @@ public class InternetMonitorService {
             return;
         }
 
+        String deviceId = currentTargetDeviceId;
+        if (DeviceIndex.canonical(deviceId) == null) {
+            logEvent(MonitorEvent.TYPE_ERROR, "Target device %s is not a valid MAC address, not turning it OFF.",
+                    deviceId);
+            return;
+        }
+
+        // Record intent first so a crash mid-command is detected on restart
+        Instant attemptedAt = Instant.now();
+        transition(PowerCycleState.TURNING_OFF, deviceId, null);
         try {
-            bluetoothService.controlDevice(currentTargetDeviceId, "off");
-            deviceCurrentlyOff = true;
-            deviceTurnedOffAt = Instant.now();
-            logEvent(MonitorEvent.TYPE_SUCCESS, "Device turned OFF: " + currentTargetDeviceId);
+            bluetoothService.controlDevice(deviceId, "off");
+            transition(PowerCycleState.OFF, deviceId, Instant.now());
+            failedTurnOns = 0;
+            nextTurnOnAt = null;
+            logEvent(MonitorEvent.TYPE_SUCCESS, "Device turned OFF: %s", deviceId);
+            scheduleResume(Duration.ofMinutes(currentPowerCycleDelay));
+        } catch (CommandNotSentException e) {
+            // Nothing reached the plug, so it is still on
+            transition(PowerCycleState.MONITORING, deviceId, null);
+            logEvent(MonitorEvent.TYPE_ERROR, "Failed to turn device OFF: %s", e.getMessage());
         } catch (Exception e) {
-            logEvent(MonitorEvent.TYPE_ERROR, "Failed to turn device OFF: " + e.getMessage());
+            // The command may still have landed (e.g. a timeout after the write), so stay in
+            // TURNING_OFF until the plug itself says which way it went
+            logEvent(MonitorEvent.TYPE_ERROR, "Failed to turn device OFF: %s", e.getMessage());
+            reconcile(deviceId, attemptedAt);
         }
     }
 
     private void turnDeviceOn() {
-        if (currentTargetDeviceId == null || currentTargetDeviceId.isBlank()) {
+        String deviceId = cycleDeviceId;
+        if (deviceId == null || deviceId.isBlank()) {
             logEvent(MonitorEvent.TYPE_WARNING, "No target device configured.");
             return;
         }
 
+        Instant turnedOffAt = deviceTurnedOffAt;
+        transition(PowerCycleState.TURNING_ON, deviceId, turnedOffAt);
         try {
-            bluetoothService.controlDevice(currentTargetDeviceId, "on");
-            deviceCurrentlyOff = false;
-            deviceTurnedOffAt = null;
-            logEvent(MonitorEvent.TYPE_SUCCESS, "Device turned ON: " + currentTargetDeviceId);
+            bluetoothService.controlDevice(deviceId, "on");
+            transition(PowerCycleState.MONITORING, deviceId, null);
+            logEvent(MonitorEvent.TYPE_SUCCESS, "Device turned ON: %s", deviceId);
         } catch (Exception e) {
-            logEvent(MonitorEvent.TYPE_ERROR, "Failed to turn device ON: " + e.getMessage());
+            transition(PowerCycleState.OFF, deviceId, turnedOffAt);
+            logEvent(MonitorEvent.TYPE_ERROR, "Failed to turn device ON: %s", e.getMessage());
         }
     }
 
@@ -159,23 +366,29 @@ public class InternetMonitorService {
         status.put("offlineThresholdMinutes", currentOfflineThreshold);
         status.put("powerCycleDelayMinutes", currentPowerCycleDelay);
         status.put("lastOnlineTime", lastOnlineTime.toEpochMilli());
-        status.put("deviceCurrentlyOff", deviceCurrentlyOff);
+        status.put("powerCycleState", state.name());
+        status.put("deviceCurrentlyOff", state != PowerCycleState.MONITORING);
 
-        synchronized (eventLog) {
-            status.put("events", new ArrayList<>(eventLog));
-        }
+        status.put("events", eventLog.snapshot());
 
-        if (deviceTurnedOffAt != null) {
-            status.put("deviceTurnedOffAt", deviceTurnedOffAt.toEpochMilli());
+        Instant turnedOffAt = deviceTurnedOffAt;
+        if (turnedOffAt != null) {
+            status.put("deviceTurnedOffAt", turnedOffAt.toEpochMilli());
+            status.put("powerCycleResumeAt",
+                    turnedOffAt.plus(Duration.ofMinutes(currentPowerCycleDelay)).toEpochMilli());
         }
         return status;
     }
 
-    public void updateSettings(String targetDeviceId, int offlineThreshold, int powerCycleDelay) {
+    public synchronized void updateSettings(String targetDeviceId, int offlineThreshold, int powerCycleDelay) {
         this.currentTargetDeviceId = targetDeviceId;
         this.currentOfflineThreshold = offlineThreshold;
         this.currentPowerCycleDelay = powerCycleDelay;
-        logEvent(MonitorEvent.TYPE_INFO, "Settings updated. Target: " + targetDeviceId + ", Threshold: "
-                + offlineThreshold + "m, Delay: " + powerCycleDelay + "m");
+        logEvent(MonitorEvent.TYPE_INFO, "Settings updated. Target: %s, Threshold: %dm, Delay: %dm", targetDeviceId,
+                offlineThreshold, powerCycleDelay);
+
+        if (state == PowerCycleState.OFF && deviceTurnedOffAt != null) {
+            scheduleResume(remainingDelay(Instant.now()));
+        }
     }
 }
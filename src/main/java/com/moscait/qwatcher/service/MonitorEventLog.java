@@ -0,0 +1,167 @@
+package com.moscait.qwatcher.service;
+
+import com.moscait.qwatcher.model.MonitorEvent;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, newest-first event log that collapses repeats. Events are keyed by
+ * type and message template (a {@link String#format} pattern); a repeat within
+ * the window updates the existing entry's count, last-seen time and arguments
+ * instead of adding a new one, and the message is only formatted when read.
+ * When an aggregated entry ends (its window passes or it is evicted), the
+ * final count and first/last occurrence go to the {@code onClose} listener.
+ */
+final class MonitorEventLog {
+
+    private static final class Entry {
+        final String type;
+        final String template;
+        final long firstSeen;
+        Object[] args;
+        long lastSeen;
+        int count;
+        String message;
+        boolean closed;
+
+        Entry(String type, String template, Object[] args, long now) {
+            this.type = type;
+            this.template = template;
+            this.args = args;
+            this.firstSeen = now;
+            this.lastSeen = now;
+            this.count = 1;
+        }
+
+        String message() {
+            if (message == null) {
+                message = args.length == 0 ? template : String.format(template, args);
+            }
+            return message;
+        }
+
+        String key() {
+            return type + '\0' + template;
+        }
+
+        MonitorEvent toEvent() {
+            return new MonitorEvent(lastSeen, type, message(), count, firstSeen);
+        }
+    }
+
+    private final int maxSize;
+    private final long windowMillis;
+    private final Consumer<MonitorEvent> onClose;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    // Latest entry for each type/template pair
+    private final Map<String, Entry> latest = new HashMap<>();
+
+    MonitorEventLog(int maxSize, Duration window, Consumer<MonitorEvent> onClose) {
+        this.maxSize = maxSize;
+        this.windowMillis = window.toMillis();
+        this.onClose = onClose;
+    }
+
+    /**
+     * Records an event and returns how many times it has now occurred within
+     * the window (1 for a new entry).
+     */
+    int record(String type, String template, Object... args) {
+        List<MonitorEvent> closed = new ArrayList<>();
+        int count;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            closeExpired(now, closed);
+            count = add(type, template, args, now, closed);
+        }
+        // Listener runs outside the lock; it writes to disk
+        closed.forEach(onClose);
+        return count;
+    }
+
+    private int add(String type, String template, Object[] args, long now, List<MonitorEvent> closed) {
+        String key = type + '\0' + template;
+
+        Entry entry = latest.get(key);
+        if (entry != null) {
+            entry.count++;
+            entry.lastSeen = now;
+            entry.args = args;
+            entry.message = null;
+            // Keep the log ordered by last occurrence
+            if (entries.peekFirst() != entry) {
+                entries.removeFirstOccurrence(entry);
+                entries.addFirst(entry);
+            }
+            return entry.count;
+        }
+
+        entry = new Entry(type, template, args, now);
+        latest.put(key, entry);
+        entries.addFirst(entry);
+        if (entries.size() > maxSize) {
+            Entry evicted = entries.removeLast();
+            latest.remove(evicted.key(), evicted);
+            close(evicted, closed);
+        }
+        return 1;
+    }
+
+    /** Ends the aggregation of entries whose window has passed. */
+    void closeExpired() {
+        List<MonitorEvent> closed = new ArrayList<>();
+        synchronized (this) {
+            closeExpired(System.currentTimeMillis(), closed);
+        }
+        closed.forEach(onClose);
+    }
+
+    /** Ends every open aggregation, e.g. on shutdown. */
+    void closeAll() {
+        List<MonitorEvent> closed = new ArrayList<>();
+        synchronized (this) {
+            for (Entry entry : latest.values()) {
+                close(entry, closed);
+            }
+            latest.clear();
+        }
+        closed.forEach(onClose);
+    }
+
+    private void closeExpired(long now, List<MonitorEvent> closed) {
+        for (Iterator<Entry> it = latest.values().iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (now - entry.lastSeen > windowMillis) {
+                it.remove();
+                close(entry, closed);
+            }
+        }
+    }
+
+    // A single occurrence is already in full in the history; only aggregates need closing
+    private static void close(Entry entry, List<MonitorEvent> closed) {
+        if (!entry.closed && entry.count > 1) {
+            closed.add(entry.toEvent());
+        }
+        entry.closed = true;
+    }
+
+    synchronized List<MonitorEvent> snapshot() {
+        List<MonitorEvent> result = new ArrayList<>(entries.size());
+        for (Entry e : entries) {
+            result.add(e.toEvent());
+        }
+        return result;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
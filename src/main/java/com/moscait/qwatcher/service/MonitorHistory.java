@@ -0,0 +1,260 @@
+package com.moscait.qwatcher.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moscait.qwatcher.model.HistoryRecord;
+import com.moscait.qwatcher.model.MonitorEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only monitor history on disk, one NDJSON file per UTC day, kept for
+ * a configurable number of days. Exports stream straight from the files line
+ * by line, so the full result is never held in memory.
+ */
+@ApplicationScoped
+public class MonitorHistory {
+
+    private static final Logger LOG = Logger.getLogger(MonitorHistory.class);
+
+    private static final String FILE_PREFIX = "history-";
+    private static final String FILE_SUFFIX = ".ndjson";
+    private static final String CSV_HEADER = "seq,timestamp,kind,type,count,message,firstSeen,lastSeen\n";
+
+    @ConfigProperty(name = "qwatcher.monitor.history-dir", defaultValue = "qwatcher-history")
+    String historyDir;
+
+    @ConfigProperty(name = "qwatcher.monitor.history-retention-days", defaultValue = "30")
+    int retentionDays;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    private long lastSeq;
+    private LocalDate currentDay;
+
+    public record Query(long cursor, Long from, Long to, Set<String> types, int limit) {
+    }
+
+    @PostConstruct
+    void init() {
+        List<Path> files = listFiles();
+        if (!files.isEmpty()) {
+            // Continue the sequence from the newest record on disk
+            try (BufferedReader reader = Files.newBufferedReader(files.get(files.size() - 1),
+                    StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    HistoryRecord record = parse(line);
+                    if (record != null) {
+                        lastSeq = Math.max(lastSeq, record.seq());
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to read monitor history: " + e.getMessage());
+            }
+        }
+    }
+
+    public void append(String kind, String type, String message, int count) {
+        write(kind, type, message, count, null, null);
+    }
+
+    /** Writes the record closing an aggregated event, with its final count and occurrence span. */
+    public void appendSummary(MonitorEvent event) {
+        write(HistoryRecord.KIND_SUMMARY, event.type(), event.message(), event.count(), event.firstSeen(),
+                event.timestamp());
+    }
+
+    private synchronized void write(String kind, String type, String message, int count, Long firstSeen,
+            Long lastSeen) {
+        long now = System.currentTimeMillis();
+        LocalDate day = Instant.ofEpochMilli(now).atZone(ZoneOffset.UTC).toLocalDate();
+        HistoryRecord record = new HistoryRecord(lastSeq + 1, now, kind, type, message, count, firstSeen, lastSeen);
+        try {
+            Path dir = Path.of(historyDir);
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve(FILE_PREFIX + day + FILE_SUFFIX),
+                    objectMapper.writeValueAsString(record) + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            lastSeq = record.seq();
+        } catch (IOException e) {
+            LOG.error("Failed to write monitor history: " + e.getMessage());
+            return;
+        }
+
+        if (!day.equals(currentDay)) {
+            currentDay = day;
+            pruneBefore(day.minusDays(retentionDays));
+        }
+    }
+
+    /**
+     * Streams matching records with {@code seq > cursor}, oldest first, as
+     * NDJSON or CSV. Returns the number of records written.
+     */
+    public long export(Query query, boolean csv, Writer out) throws IOException {
+        if (csv) {
+            out.write(CSV_HEADER);
+        }
+
+        List<Path> files = listFiles();
+        long written = 0;
+        for (int i = 0; i < files.size(); i++) {
+            LocalDate day = dayOf(files.get(i));
+            if (query.from() != null && day.plusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC)
+                    .toEpochMilli() <= query.from()) {
+                continue;
+            }
+            if (query.to() != null && day.atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli() > query.to()) {
+                break;
+            }
+            // Everything in this file is at or before the cursor if the next file starts right after it
+            if (i + 1 < files.size() && firstSeq(files.get(i + 1)) <= query.cursor() + 1) {
+                continue;
+            }
+
+            try (BufferedReader reader = Files.newBufferedReader(files.get(i), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    HistoryRecord record = parse(line);
+                    // A null record is a line still being written; the cursor picks it up next time
+                    if (record == null || record.seq() <= query.cursor()) {
+                        continue;
+                    }
+                    if (query.from() != null && record.timestamp() < query.from()) {
+                        continue;
+                    }
+                    if (query.to() != null && record.timestamp() > query.to()) {
+                        return written;
+                    }
+                    if (!matchesType(query.types(), record)) {
+                        continue;
+                    }
+
+                    if (csv) {
+                        writeCsv(record, out);
+                    } else {
+                        out.write(line);
+                        out.write('\n');
+                    }
+                    written++;
+                    if (query.limit() > 0 && written >= query.limit()) {
+                        return written;
+                    }
+                }
+            }
+        }
+        return written;
+    }
+
+    // Types match either the record type (INFO, OFF, ...) or its kind (EVENT, TRANSITION, SUMMARY)
+    private static boolean matchesType(Set<String> types, HistoryRecord record) {
+        if (types == null || types.isEmpty()) {
+            return true;
+        }
+        return types.contains(record.type()) || types.contains(record.kind().toUpperCase());
+    }
+
+    private void writeCsv(HistoryRecord record, Writer out) throws IOException {
+        out.write(Long.toString(record.seq()));
+        out.write(',');
+        out.write(Long.toString(record.timestamp()));
+        out.write(',');
+        out.write(record.kind());
+        out.write(',');
+        out.write(record.type());
+        out.write(',');
+        out.write(Integer.toString(record.count()));
+        out.write(',');
+        String message = record.message() != null ? record.message() : "";
+        out.write('"');
+        out.write(message.replace("\"", "\"\"").replace('\n', ' ').replace('\r', ' '));
+        out.write('"');
+        out.write(',');
+        out.write(record.firstSeen() != null ? record.firstSeen().toString() : "");
+        out.write(',');
+        out.write(record.lastSeen() != null ? record.lastSeen().toString() : "");
+        out.write('\n');
+    }
+
+    private HistoryRecord parse(String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(line, HistoryRecord.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private long firstSeq(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            HistoryRecord record = line != null ? parse(line) : null;
+            return record != null ? record.seq() : Long.MAX_VALUE;
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private List<Path> listFiles() {
+        List<Path> files = new ArrayList<>();
+        Path dir = Path.of(historyDir);
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : stream) {
+                if (dayOf(file) != null) {
+                    files.add(file);
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to list monitor history: " + e.getMessage());
+        }
+        // ISO dates sort chronologically by name
+        files.sort(null);
+        return files;
+    }
+
+    private void pruneBefore(LocalDate cutoff) {
+        for (Path file : listFiles()) {
+            if (dayOf(file).isBefore(cutoff)) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOG.warn("Failed to delete old monitor history " + file + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static LocalDate dayOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return LocalDate.parse(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+}
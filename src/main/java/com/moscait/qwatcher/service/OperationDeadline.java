@@ -0,0 +1,90 @@
+package com.moscait.qwatcher.service;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Overall time budget for one BLE operation, shared by every wait, retry and
+ * write it performs.
+ */
+final class OperationDeadline {
+
+    private final String operation;
+    private final long budgetMillis;
+    private final long deadlineNanos;
+
+    private OperationDeadline(String operation, Duration budget) {
+        this.operation = operation;
+        this.budgetMillis = budget.toMillis();
+        this.deadlineNanos = System.nanoTime() + budget.toNanos();
+    }
+
+    static OperationDeadline after(Duration budget, String operation) {
+        return new OperationDeadline(operation, budget);
+    }
+
+    long remainingMillis() {
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    boolean expired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    void check() throws TimeoutException {
+        if (expired()) {
+            throw exceeded();
+        }
+    }
+
+    /**
+     * Runs a blocking call on {@code executor} and waits at most for the time
+     * left, so a hung D-Bus call can't outlive the budget. On timeout the call
+     * is interrupted and left to finish on its own thread.
+     */
+    <T> T call(ExecutorService executor, Callable<T> action) throws Exception {
+        check();
+        Future<T> future = executor.submit(action);
+        try {
+            return future.get(remainingMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw exceeded();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /** Acquires the lock, waiting at most for the time left. */
+    void lock(Lock lock) throws InterruptedException, TimeoutException {
+        if (!lock.tryLock(remainingMillis(), TimeUnit.MILLISECONDS)) {
+            throw exceeded();
+        }
+    }
+
+    private TimeoutException exceeded() {
+        return new TimeoutException(operation + " exceeded its " + budgetMillis + "ms deadline");
+    }
+
+    /**
+     * Sleeps for the given time, cut short by the deadline, and fails if the
+     * deadline has passed afterwards.
+     */
+    void sleep(long millis) throws InterruptedException, TimeoutException {
+        check();
+        Thread.sleep(Math.min(millis, remainingMillis()));
+        check();
+    }
+}
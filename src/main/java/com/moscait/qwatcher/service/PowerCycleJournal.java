@@ -0,0 +1,132 @@
+package com.moscait.qwatcher.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Small append-only write-ahead file holding power-cycle state transitions.
+ * Each line is one transition; only the last valid line matters on recovery.
+ * A torn (partially written) last line is ignored.
+ */
+@ApplicationScoped
+public class PowerCycleJournal {
+
+    private static final Logger LOG = Logger.getLogger(PowerCycleJournal.class);
+
+    // Rewrite the file down to a single record once it grows past this
+    static final int MAX_RECORDS = 64;
+
+    @ConfigProperty(name = "qwatcher.monitor.internet.state-file", defaultValue = "qwatcher-power-cycle.wal")
+    String stateFile;
+
+    private int recordCount;
+
+    public record Entry(long timestamp, PowerCycleState state, String targetDeviceId, long turnedOffAt) {
+
+        String format() {
+            return timestamp + "|" + state.name() + "|" + (targetDeviceId != null ? targetDeviceId : "") + "|"
+                    + turnedOffAt;
+        }
+
+        static Entry parse(String line) {
+            String[] parts = line.split("\\|", -1);
+            if (parts.length != 4) {
+                return null;
+            }
+            try {
+                return new Entry(Long.parseLong(parts[0]), PowerCycleState.valueOf(parts[1]), parts[2],
+                        Long.parseLong(parts[3]));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    public synchronized Entry readLast() {
+        Path path = Path.of(stateFile);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            recordCount = lines.size();
+            Entry last = null;
+            for (String line : lines) {
+                Entry entry = Entry.parse(line.trim());
+                if (entry != null) {
+                    last = entry;
+                }
+            }
+            return last;
+        } catch (IOException e) {
+            LOG.error("Failed to read power-cycle journal " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized void append(Entry entry) {
+        Path path = Path.of(stateFile);
+        byte[] line = (entry.format() + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            if (recordCount >= MAX_RECORDS) {
+                // Compact: write the latest record to a temp file and atomically swap it in
+                Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+                write(tmp, line, true);
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                recordCount = 1;
+                return;
+            }
+
+            write(path, line, false);
+            recordCount++;
+        } catch (IOException e) {
+            LOG.error("Failed to write power-cycle journal " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void write(Path path, byte[] data, boolean truncate) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (truncate) {
+                channel.truncate(0);
+            } else {
+                channel.position(channel.size());
+                if (endsTorn(channel)) {
+                    // Terminate the torn line so it doesn't swallow this record
+                    channel.write(ByteBuffer.wrap(new byte[] { '\n' }));
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private static boolean endsTorn(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return false;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        return last.get(0) != '\n';
+    }
+}
@@ -0,0 +1,13 @@
+package com.moscait.qwatcher.service;
+
+/**
+ * States of the power-cycle flow driven by {@link InternetMonitorService}.
+ * The TURNING_* states are written to the journal before the BLE command is
+ * sent, so a crash mid-command can be detected and reconciled on restart.
+ */
+public enum PowerCycleState {
+    MONITORING,
+    TURNING_OFF,
+    OFF,
+    TURNING_ON
+}
@@ -0,0 +1,22 @@
+package com.moscait.qwatcher.service;
+
+/**
+ * One way of reaching a Shelly relay, e.g. local HTTP RPC or BLE.
+ * {@link BluetoothService#controlDevice(String, String)} tries the drivers
+ * that support a device, fastest healthy path first.
+ */
+public interface RelayDriver {
+
+    String name();
+
+    boolean supports(String address);
+
+    /**
+     * Switches the relay. Throws {@link CommandNotSentException} when the
+     * failure happened before anything reached the device.
+     */
+    void setRelay(String address, boolean on) throws Exception;
+
+    /** Returns "ON", "OFF" or "UNKNOWN". */
+    String getRelayState(String address) throws Exception;
+}
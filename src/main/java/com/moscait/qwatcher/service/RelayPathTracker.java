@@ -0,0 +1,138 @@
+package com.moscait.qwatcher.service;
+
+import com.moscait.qwatcher.model.RelayPathStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-device, per-driver latency and health. A path that just failed is
+ * tried last until its cooldown has passed; otherwise measured paths are
+ * ordered by their moving-average latency, while paths without a latency
+ * sample keep their declared position.
+ */
+final class RelayPathTracker {
+
+    // Weight of the newest sample in the moving average
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private final Duration failureCooldown;
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private static final class Stats {
+        final String deviceId;
+        final String driver;
+        double averageMillis = -1;
+        long lastMillis;
+        long successes;
+        long failures;
+        boolean lastOk = true;
+        Instant lastFailureAt;
+        String lastError;
+
+        Stats(String deviceId, String driver) {
+            this.deviceId = deviceId;
+            this.driver = driver;
+        }
+    }
+
+    RelayPathTracker(Duration failureCooldown) {
+        this.failureCooldown = failureCooldown;
+    }
+
+    List<RelayDriver> order(String deviceId, List<RelayDriver> drivers) {
+        List<RelayDriver> healthy = new ArrayList<>();
+        List<RelayDriver> failing = new ArrayList<>();
+        for (RelayDriver driver : drivers) {
+            (isHealthy(stats.get(key(deviceId, driver.name()))) ? healthy : failing).add(driver);
+        }
+        sortMeasured(deviceId, healthy);
+        sortMeasured(deviceId, failing);
+        healthy.addAll(failing);
+        return healthy;
+    }
+
+    /**
+     * Sorts the paths that have a latency sample by that latency, within the
+     * positions they already occupy. Untried paths don't move.
+     */
+    private void sortMeasured(String deviceId, List<RelayDriver> drivers) {
+        List<Integer> slots = new ArrayList<>();
+        List<RelayDriver> measured = new ArrayList<>();
+        for (int i = 0; i < drivers.size(); i++) {
+            if (averageMillis(deviceId, drivers.get(i)) >= 0) {
+                slots.add(i);
+                measured.add(drivers.get(i));
+            }
+        }
+        measured.sort(Comparator.comparingDouble(d -> averageMillis(deviceId, d)));
+        for (int i = 0; i < slots.size(); i++) {
+            drivers.set(slots.get(i), measured.get(i));
+        }
+    }
+
+    private double averageMillis(String deviceId, RelayDriver driver) {
+        Stats s = stats.get(key(deviceId, driver.name()));
+        if (s == null) {
+            return -1;
+        }
+        synchronized (s) {
+            return s.averageMillis;
+        }
+    }
+
+    void recordSuccess(String deviceId, String driver, long millis) {
+        Stats s = statsFor(deviceId, driver);
+        synchronized (s) {
+            s.successes++;
+            s.lastMillis = millis;
+            s.averageMillis = s.averageMillis < 0 ? millis : EWMA_WEIGHT * millis + (1 - EWMA_WEIGHT) * s.averageMillis;
+            s.lastOk = true;
+        }
+    }
+
+    void recordFailure(String deviceId, String driver, long millis, String error) {
+        Stats s = statsFor(deviceId, driver);
+        synchronized (s) {
+            s.failures++;
+            s.lastMillis = millis;
+            s.lastOk = false;
+            s.lastFailureAt = Instant.now();
+            s.lastError = error;
+        }
+    }
+
+    List<RelayPathStatus> snapshot() {
+        List<RelayPathStatus> result = new ArrayList<>();
+        for (Stats s : stats.values()) {
+            synchronized (s) {
+                result.add(new RelayPathStatus(s.deviceId, s.driver, isHealthy(s), s.lastMillis,
+                        Math.round(Math.max(0, s.averageMillis)), s.successes, s.failures,
+                        s.lastFailureAt != null ? s.lastFailureAt.toEpochMilli() : null, s.lastError));
+            }
+        }
+        return result;
+    }
+
+    private boolean isHealthy(Stats s) {
+        if (s == null) {
+            return true;
+        }
+        synchronized (s) {
+            return s.lastOk || s.lastFailureAt.plus(failureCooldown).isBefore(Instant.now());
+        }
+    }
+
+    private Stats statsFor(String deviceId, String driver) {
+        return stats.computeIfAbsent(key(deviceId, driver), k -> new Stats(deviceId, driver));
+    }
+
+    private static String key(String deviceId, String driver) {
+        return deviceId + "|" + driver;
+    }
+}
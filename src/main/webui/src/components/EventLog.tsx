@@ -31,6 +31,11 @@ export const EventLog = ({ events }: EventLogProps) => (
                                         evt.type === 'WARNING' ? 'text-orange-400' :
                                             evt.type === 'SUCCESS' ? 'text-green-400' : 'text-blue-400'
                                     }`}>{evt.type}</span>
+                                {evt.count && evt.count > 1 && (
+                                    <span className="text-xs text-slate-500" title={`First seen ${formatTime(evt.firstSeen ?? evt.timestamp)}`}>
+                                        ×{evt.count} since {formatTime(evt.firstSeen ?? evt.timestamp)}
+                                    </span>
+                                )}
                             </div>
                             <p className="text-slate-300 break-all">{evt.message}</p>
                         </div>
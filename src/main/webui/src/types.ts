@@ -11,6 +11,8 @@ export interface MonitorEvent {
     timestamp: number;
     type: string;
     message: string;
+    count?: number;
+    firstSeen?: number;
 }
 
 export interface MonitorStatus {
@@ -1,7 +1,60 @@
-import { defineConfig } from 'vite'
+import { defineConfig, type Plugin } from 'vite'
 import react from '@vitejs/plugin-react'
+import { readdirSync, readFileSync, statSync, writeFileSync } from 'node:fs'
+import { extname, join, relative, resolve, sep } from 'node:path'
+import { brotliCompressSync, constants, gzipSync } from 'node:zlib'
+
+const COMPRESSIBLE = new Set(['.html', '.js', '.css', '.svg', '.json', '.txt', '.ico'])
+
+const walk = (dir: string): string[] =>
+    readdirSync(dir).flatMap((name) => {
+        const path = join(dir, name)
+        return statSync(path).isDirectory() ? walk(path) : [path]
+    })
+
+// Writes .br and .gz next to each text asset so Quarkus serves them as-is
+// instead of compressing on every request, and lists them in precompressed.txt
+// so the server can load them all at startup (see WebUiAssetRoutes.java)
+const precompress = (): Plugin => {
+    let outDir = 'dist'
+    return {
+        name: 'qwatcher-precompress',
+        apply: 'build',
+        configResolved(config) {
+            outDir = resolve(config.root, config.build.outDir)
+        },
+        closeBundle() {
+            let raw = 0
+            let gzip = 0
+            let brotli = 0
+            const assets: string[] = []
+            for (const file of walk(outDir)) {
+                if (!COMPRESSIBLE.has(extname(file))) {
+                    continue
+                }
+                const data = readFileSync(file)
+                const gz = gzipSync(data, { level: 9 })
+                const br = brotliCompressSync(data, {
+                    params: {
+                        [constants.BROTLI_PARAM_QUALITY]: constants.BROTLI_MAX_QUALITY,
+                        [constants.BROTLI_PARAM_SIZE_HINT]: data.length,
+                    },
+                })
+                writeFileSync(`${file}.gz`, gz)
+                writeFileSync(`${file}.br`, br)
+                assets.push('/' + relative(outDir, file).split(sep).join('/'))
+                raw += data.length
+                gzip += gz.length
+                brotli += br.length
+            }
+            writeFileSync(join(outDir, 'precompressed.txt'), assets.join('\n') + '\n')
+            const kb = (bytes: number) => `${(bytes / 1024).toFixed(1)} kB`
+            console.log(`precompressed web UI: ${kb(raw)} raw, ${kb(gzip)} gzip, ${kb(brotli)} brotli`)
+        },
+    }
+}
 
 // https://vitejs.dev/config/
 export default defineConfig({
-    plugins: [react()],
+    plugins: [react(), precompress()],
 })
@@ -0,0 +1,94 @@
+package com.moscait.qwatcher;
+
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.QuarkusTestProfile;
+import io.quarkus.test.junit.TestProfile;
+import io.restassured.config.DecoderConfig;
+import io.restassured.config.RestAssuredConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+
+@QuarkusTest
+@TestProfile(WebUiAssetRoutesTest.Profile.class)
+class WebUiAssetRoutesTest {
+
+    public static class Profile implements QuarkusTestProfile {
+        @Override
+        public Map<String, String> getConfigOverrides() {
+            return Map.of("qwatcher.webui.resource-root", "META-INF/webui-test");
+        }
+    }
+
+    // Keep the compressed bytes as sent
+    private static final RestAssuredConfig RAW = RestAssuredConfig.config()
+            .decoderConfig(DecoderConfig.decoderConfig().noContentDecoders());
+
+    @Test
+    void testHashedAssetServedAsBrotliAndImmutable() {
+        given().config(RAW).header("Accept-Encoding", "gzip, br")
+                .when().get("/assets/app-AbCd1234.js")
+                .then()
+                .statusCode(200)
+                .header("Content-Encoding", is("br"))
+                .header("Content-Type", containsString("text/javascript"))
+                .header("Cache-Control", containsString("immutable"))
+                .header("Vary", containsString("Accept-Encoding"))
+                .header("ETag", notNullValue());
+    }
+
+    @Test
+    void testGzipFallbackAndRefusedBrotli() {
+        given().config(RAW).header("Accept-Encoding", "br;q=0, gzip")
+                .when().get("/assets/app-AbCd1234.js")
+                .then()
+                .statusCode(200)
+                .header("Content-Encoding", is("gzip"));
+    }
+
+    @Test
+    void testHighestQualityCodingWins() {
+        given().config(RAW).header("Accept-Encoding", "gzip;q=1, br;q=0.1")
+                .when().get("/assets/app-AbCd1234.js")
+                .then()
+                .statusCode(200)
+                .header("Content-Encoding", is("gzip"));
+
+        given().config(RAW).header("Accept-Encoding", "gzip;q=0.5, *")
+                .when().get("/assets/app-AbCd1234.js")
+                .then()
+                .statusCode(200)
+                .header("Content-Encoding", is("br"));
+    }
+
+    @Test
+    void testIndexIsRevalidated() {
+        String etag = given().config(RAW).header("Accept-Encoding", "br")
+                .when().get("/")
+                .then()
+                .statusCode(200)
+                .header("Cache-Control", is("no-cache"))
+                .extract().header("ETag");
+
+        given().config(RAW).header("Accept-Encoding", "br").header("If-None-Match", etag)
+                .when().get("/")
+                .then()
+                .statusCode(304);
+    }
+
+    @Test
+    void testUnlistedAssetFallsThrough() {
+        given().config(RAW).header("Accept-Encoding", "br")
+                .when().get("/assets/other-EfGh5678.js")
+                .then()
+                .statusCode(404)
+                .header("Content-Encoding", nullValue())
+                .header("Vary", containsString("Accept-Encoding"));
+    }
+}
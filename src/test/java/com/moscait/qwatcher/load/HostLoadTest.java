@@ -0,0 +1,371 @@
+package com.moscait.qwatcher.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moscait.qwatcher.service.SimulatedBluetoothService;
+import com.moscait.qwatcher.service.SimulatedHostService;
+import io.quarkus.test.common.http.TestHTTPResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load and soak tests against the running app on a simulated BLE radio, so
+ * the real device index, breakers and relay drivers are under load.
+ * Excluded from the default build; run with:
+ *
+ * <pre>
+ * ./mvnw test -Pload -Dtest=HostLoadTest
+ * ./mvnw test -Pload -Dtest=HostLoadTest -Dqwatcher.soak.duration=PT2H
+ * </pre>
+ *
+ * Limits can be tuned with -Dqwatcher.load.* system properties (see below).
+ */
+@QuarkusTest
+@TestProfile(LoadTestProfile.class)
+@Tag("load")
+class HostLoadTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Same bound as the monitor's event log
+    private static final int MAX_EVENTS = 100;
+
+    private static final int POLLERS = Integer.getInteger("qwatcher.load.pollers", 8);
+    private static final Duration DURATION = duration("qwatcher.load.duration", Duration.ofSeconds(15));
+    private static final Duration OUTAGE_PHASE = duration("qwatcher.load.outage-phase", Duration.ofSeconds(3));
+    // After a BLE outage breakers fail calls fast until their open period ends and a probe gets through
+    private static final Duration RECOVERY_GRACE = duration("qwatcher.load.recovery-grace", Duration.ofSeconds(5));
+    // Pollers are closed-loop, so throughput follows latency; this floor only catches stalls
+    private static final long MIN_THROUGHPUT = Long.getLong("qwatcher.load.min-rps", 50);
+
+    // Latency limits. The Pi's budget comes from application.properties and the web UI: the UI polls
+    // /api/host every 5s, a scan may spend qwatcher.bluetooth.scan-timeout-ms (3000) on BlueZ, and a
+    // command gets qwatcher.bluetooth.operation-timeout-ms (8000). Each limit stays well inside that
+    // budget and below twice the baseline measured with the defaults on one core (in brackets), so a
+    // 2x regression fails. Re-measure and adjust when the simulated radio's timings change.
+
+    // /api/host reads idle relays over BLE and shows the cached state of busy ones
+    // [p50 6-11ms; p99 475-483ms, one ~150ms state read per relay]; p99 is under a third of the scan deadline
+    private static final long HOST_P50_MS = Long.getLong("qwatcher.load.host-p50-ms", 20);
+    private static final long HOST_P99_MS = Long.getLong("qwatcher.load.host-p99-ms", 900);
+    // Reads in-memory state only [p50 4-8ms, p99 25-38ms]
+    private static final long MONITOR_P50_MS = Long.getLong("qwatcher.load.monitor-p50-ms", 15);
+    private static final long MONITOR_P99_MS = Long.getLong("qwatcher.load.monitor-p99-ms", 60);
+    // Commands queue behind the other RPCs to the same relay, one at a time per device, at ~0.5s each
+    // [p90 1.3-1.7s, p99 3.6-4.3s]; p99 leaves 3s of the operation deadline for a slow relay
+    private static final long CONTROL_P90_MS = Long.getLong("qwatcher.load.control-p90-ms", 2500);
+    private static final long CONTROL_P99_MS = Long.getLong("qwatcher.load.control-p99-ms", 5000);
+    private static final int DBUS_CALL_THREADS = Integer.getInteger("qwatcher.load.dbus-call-threads", 2 * POLLERS + 8);
+    private static final long HEAP_MB = Long.getLong("qwatcher.load.heap-mb", 256);
+    private static final long RSS_MB = Long.getLong("qwatcher.load.rss-mb", 768);
+
+    @TestHTTPResource("/")
+    URI baseUri;
+
+    @Inject
+    SimulatedBluetoothService bluetooth;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @AfterEach
+    void restoreBackends() {
+        SimulatedHostService.online = true;
+        SimulatedBluetoothService.setFailing(false);
+    }
+
+    @Test
+    void testMixedLoadMeetsSlo() throws Exception {
+        LoadResult result = runLoad(DURATION);
+        result.print("load");
+        assertSlo(result);
+        assertNoLeaks();
+
+        assertTrue(usedHeapAfterGc() <= HEAP_MB * 1024 * 1024, "Heap after GC above " + HEAP_MB + "MB");
+        long rss = rssBytes();
+        if (rss >= 0) {
+            assertTrue(rss <= RSS_MB * 1024 * 1024, "RSS " + rss / (1024 * 1024) + "MB above " + RSS_MB + "MB");
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "qwatcher.soak.duration", matches = ".+")
+    void testSoakHasNoLeaks() throws Exception {
+        Duration total = Duration.parse(System.getProperty("qwatcher.soak.duration"));
+        Duration round = duration("qwatcher.soak.round", Duration.ofMinutes(1));
+
+        // Warm up (JIT, pools, caches) before taking the baseline
+        runLoad(round);
+        Snapshot baseline = snapshot();
+        System.out.println("[soak] baseline " + baseline);
+
+        long rounds = Math.max(1, total.toMillis() / round.toMillis());
+        for (long i = 1; i <= rounds; i++) {
+            LoadResult result = runLoad(round);
+            result.print("soak round " + i + "/" + rounds);
+            assertSlo(result);
+            assertNoLeaks();
+
+            Snapshot current = snapshot();
+            System.out.println("[soak] round " + i + " " + current);
+            assertTrue(current.events() <= MAX_EVENTS, "Event log grew to " + current.events());
+            assertEquals(baseline.devices(), current.devices(), "Device list size changed");
+            if (baseline.openFiles() >= 0) {
+                assertTrue(current.openFiles() <= baseline.openFiles() + 4L * POLLERS + 32,
+                        "Open files grew from " + baseline.openFiles() + " to " + current.openFiles());
+            }
+            assertTrue(current.heapBytes() <= baseline.heapBytes() + 32L * 1024 * 1024,
+                    "Heap after GC grew from " + baseline.heapBytes() + " to " + current.heapBytes());
+        }
+    }
+
+    private void assertSlo(LoadResult result) {
+        assertEquals(0, result.unexpectedErrors(), "Unexpected errors");
+        assertTrue(result.throughput() >= MIN_THROUGHPUT,
+                "Throughput " + result.throughput() + " req/s below " + MIN_THROUGHPUT);
+        assertTrue(result.hostP50() <= HOST_P50_MS,
+                "Host p50 " + result.hostP50() + "ms above " + HOST_P50_MS + "ms");
+        assertTrue(result.hostP99() <= HOST_P99_MS,
+                "Host p99 " + result.hostP99() + "ms above " + HOST_P99_MS + "ms");
+        assertTrue(result.monitorP50() <= MONITOR_P50_MS,
+                "Monitor p50 " + result.monitorP50() + "ms above " + MONITOR_P50_MS + "ms");
+        assertTrue(result.monitorP99() <= MONITOR_P99_MS,
+                "Monitor p99 " + result.monitorP99() + "ms above " + MONITOR_P99_MS + "ms");
+        assertTrue(result.controlP90() <= CONTROL_P90_MS,
+                "Control p90 " + result.controlP90() + "ms above " + CONTROL_P90_MS + "ms");
+        assertTrue(result.controlP99() <= CONTROL_P99_MS,
+                "Control p99 " + result.controlP99() + "ms above " + CONTROL_P99_MS + "ms");
+    }
+
+    /**
+     * Per-device state must stay bounded by what is in range, whatever the
+     * advertiser churn, and every RPC must reach the relay as a whole frame.
+     */
+    private void assertNoLeaks() {
+        int devices = SimulatedBluetoothService.DEVICE_IDS.size();
+        assertTrue(bluetooth.indexSize() <= bluetooth.visibleDevices(),
+                "Device index holds " + bluetooth.indexSize() + " entries, " + bluetooth.visibleDevices()
+                        + " in range");
+        assertTrue(bluetooth.breakerCount() <= devices, "Breakers grew to " + bluetooth.breakerCount());
+        assertTrue(bluetooth.relayPathCount() <= devices, "Relay path stats grew to " + bluetooth.relayPathCount());
+        assertTrue(bluetooth.openConnections() <= devices, "Open connections grew to " + bluetooth.openConnections());
+        assertEquals(0, bluetooth.garbledFrames(), "Relays received garbled RPC frames");
+        long dbusThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("qwatcher-dbus-call"))
+                .count();
+        assertTrue(dbusThreads <= DBUS_CALL_THREADS, "D-Bus call threads grew to " + dbusThreads);
+    }
+
+    /**
+     * Drives concurrent pollers against /api/host and /api/host/monitor mixed
+     * with control calls, while cycling through injected outages.
+     */
+    private LoadResult runLoad(Duration duration) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(POLLERS + 1);
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        try {
+            Future<?> outages = pool.submit(() -> injectOutages(end));
+            List<Future<Recorder>> workers = new ArrayList<>();
+            for (int i = 0; i < POLLERS; i++) {
+                workers.add(pool.submit(() -> poll(end)));
+            }
+
+            Recorder total = new Recorder();
+            for (Future<Recorder> worker : workers) {
+                total.merge(worker.get());
+            }
+            outages.get();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return total.result(seconds);
+        } finally {
+            pool.shutdownNow();
+            restoreBackends();
+        }
+    }
+
+    private Recorder poll(long end) throws Exception {
+        Recorder recorder = new Recorder();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            int op = random.nextInt(100);
+            long t0 = System.nanoTime();
+            if (op < 90) {
+                boolean host = op < 45;
+                HttpResponse<String> response = client.send(
+                        HttpRequest.newBuilder(baseUri.resolve(host ? "api/host" : "api/host/monitor")).GET().build(),
+                        HttpResponse.BodyHandlers.ofString());
+                (host ? recorder.host : recorder.monitor).add((System.nanoTime() - t0) / 1_000_000,
+                        response.statusCode() == 200);
+            } else {
+                String device = SimulatedBluetoothService.DEVICE_IDS
+                        .get(random.nextInt(SimulatedBluetoothService.DEVICE_IDS.size()));
+                String body = "{\"command\":\"" + (random.nextBoolean() ? "on" : "off") + "\"}";
+                HttpResponse<Void> response = client.send(
+                        HttpRequest.newBuilder(baseUri.resolve("api/devices/" + device + "/control"))
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                // 500s are expected only during a BLE outage and while breakers recover from it
+                boolean outage = SimulatedBluetoothService.failedSince(t0 - RECOVERY_GRACE.toNanos());
+                recorder.control.add((System.nanoTime() - t0) / 1_000_000,
+                        response.statusCode() == 200 || (response.statusCode() == 500 && outage));
+            }
+        }
+        return recorder;
+    }
+
+    private void injectOutages(long end) {
+        int phase = 0;
+        try {
+            while (System.nanoTime() < end) {
+                // normal -> internet down -> internet and BLE down
+                SimulatedHostService.online = phase % 3 == 0;
+                SimulatedBluetoothService.setFailing(phase % 3 == 2);
+                phase++;
+                Thread.sleep(Math.min(OUTAGE_PHASE.toMillis(), Math.max(1, (end - System.nanoTime()) / 1_000_000)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Snapshot snapshot() throws Exception {
+        JsonNode monitor = MAPPER.readTree(get("api/host/monitor"));
+        JsonNode host = MAPPER.readTree(get("api/host"));
+        return new Snapshot(monitor.get("events").size(), host.get("devices").size(), openFiles(),
+                usedHeapAfterGc());
+    }
+
+    private String get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(baseUri.resolve(path)).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        System.gc();
+        Thread.sleep(200);
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long rssBytes() {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.exists(status)) {
+            return -1;
+        }
+        try (Stream<String> lines = Files.lines(status)) {
+            return lines.filter(l -> l.startsWith("VmRSS:"))
+                    .map(l -> Long.parseLong(l.replaceAll("[^0-9]", "")) * 1024)
+                    .findFirst().orElse(-1L);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static long openFiles() {
+        Path fds = Path.of("/proc/self/fd");
+        if (!Files.isDirectory(fds)) {
+            return -1;
+        }
+        try (Stream<Path> entries = Files.list(fds)) {
+            return entries.count();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static Duration duration(String property, Duration defaultValue) {
+        String value = System.getProperty(property);
+        return value != null ? Duration.parse(value) : defaultValue;
+    }
+
+    private record Snapshot(int events, int devices, long openFiles, long heapBytes) {
+    }
+
+    private record LoadResult(long requests, long unexpectedErrors, long throughput, long hostP50, long hostP99,
+            long monitorP50, long monitorP99, long controlP90, long controlP99) {
+
+        void print(String label) {
+            System.out.println("[" + label + "] requests=" + requests + " rps=" + throughput + " host p50="
+                    + hostP50 + "ms p99=" + hostP99 + "ms monitor p50=" + monitorP50 + "ms p99=" + monitorP99
+                    + "ms control p90=" + controlP90 + "ms p99=" + controlP99 + "ms errors=" + unexpectedErrors);
+        }
+    }
+
+    private static final class Recorder {
+        final Series host = new Series();
+        final Series monitor = new Series();
+        final Series control = new Series();
+
+        void merge(Recorder other) {
+            host.merge(other.host);
+            monitor.merge(other.monitor);
+            control.merge(other.control);
+        }
+
+        LoadResult result(double seconds) {
+            long requests = host.count + monitor.count + control.count;
+            return new LoadResult(requests, host.errors + monitor.errors + control.errors,
+                    Math.round(requests / seconds), host.percentile(0.50), host.percentile(0.99),
+                    monitor.percentile(0.50), monitor.percentile(0.99), control.percentile(0.90),
+                    control.percentile(0.99));
+        }
+    }
+
+    private static final class Series {
+        private long[] latencies = new long[512];
+        private int count;
+        private long errors;
+
+        void add(long millis, boolean ok) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = millis;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        void merge(Series other) {
+            for (int i = 0; i < other.count; i++) {
+                add(other.latencies[i], true);
+            }
+            errors += other.errors;
+        }
+
+        long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(quantile * count) - 1)];
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.moscait.qwatcher.load;
+
+import com.moscait.qwatcher.service.SimulatedBluetoothService;
+import com.moscait.qwatcher.service.SimulatedHostService;
+import io.quarkus.test.junit.QuarkusTestProfile;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the app against the simulated BLE radio and probe, with the monitor
+ * ticking every second and power-cycling immediately so injected outages
+ * exercise the whole event pipeline. Breakers reopen and probe within a
+ * couple of seconds so each outage phase also covers recovery. The base
+ * BluetoothService bean is excluded, so the simulated one is the only bean
+ * and nothing opens the real system bus.
+ */
+public class LoadTestProfile implements QuarkusTestProfile {
+
+    @Override
+    public Set<Class<?>> getEnabledAlternatives() {
+        return Set.of(SimulatedBluetoothService.class, SimulatedHostService.class);
+    }
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        return Map.of(
+                "quarkus.arc.exclude-types", "com.moscait.qwatcher.service.BluetoothService",
+                "qwatcher.bluetooth.breaker.open-seconds", "1",
+                "qwatcher.bluetooth.breaker.probe-interval", "1s",
+                "qwatcher.monitor.internet.check-cron", "* * * * * ?",
+                "qwatcher.monitor.internet.offline-threshold-minutes", "0",
+                "qwatcher.monitor.internet.power-cycle-delay-minutes", "0",
+                "qwatcher.monitor.internet.target-device-id", SimulatedBluetoothService.DEVICE_IDS.get(0),
+                "qwatcher.monitor.internet.state-file", "target/load-test-power-cycle.wal",
+                "qwatcher.monitor.history-dir", "target/load-test-history");
+    }
+}
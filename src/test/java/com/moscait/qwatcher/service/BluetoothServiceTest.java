@@ -0,0 +1,255 @@
+package com.moscait.qwatcher.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moscait.qwatcher.model.RelayPathStatus;
+import org.bluez.exceptions.BluezDoesNotExistException;
+import org.bluez.exceptions.BluezFailedException;
+import org.bluez.exceptions.BluezInProgressException;
+import org.bluez.exceptions.BluezInvalidArgumentsException;
+import org.bluez.exceptions.BluezNotReadyException;
+import org.bluez.exceptions.BluezNotSupportedException;
+import org.freedesktop.dbus.errors.NoReply;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BluetoothServiceTest {
+
+    private static final String MAC = "88:13:BF:D6:84:86";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ShellyRpcStub relay;
+    private BluetoothService service;
+    private final FakeBle ble = new FakeBle();
+
+    /** BLE path stand-in that records the commands it receives. */
+    static class FakeBle implements RelayDriver {
+        final List<Boolean> commands = new CopyOnWriteArrayList<>();
+        volatile String state = "OFF";
+
+        @Override
+        public String name() {
+            return "ble";
+        }
+
+        @Override
+        public boolean supports(String address) {
+            return true;
+        }
+
+        @Override
+        public void setRelay(String address, boolean on) throws Exception {
+            commands.add(on);
+            state = on ? "ON" : "OFF";
+        }
+
+        @Override
+        public String getRelayState(String address) {
+            return state;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        relay = new ShellyRpcStub(true);
+
+        HttpRpcRelayDriver httpDriver = new HttpRpcRelayDriver();
+        httpDriver.objectMapper = mapper;
+        httpDriver.timeoutMs = 1000;
+        httpDriver.configHosts = Optional.of(List.of(MAC + "=" + relay.host()));
+        httpDriver.init();
+
+        service = new BluetoothService();
+        service.objectMapper = mapper;
+        service.httpDriver = httpDriver;
+        service.bleDriver = ble;
+        service.relayPaths = new RelayPathTracker(Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        relay.stop();
+        service.httpDriver.close();
+        service.tearDown();
+    }
+
+    @Test
+    void testHttpPathUsedWhileHealthy() throws Exception {
+        service.controlDevice(MAC, "on");
+        service.controlDevice(MAC, "on");
+
+        assertEquals(2, relay.requests());
+        assertTrue(ble.commands.isEmpty());
+    }
+
+    @Test
+    void testFallsBackToBleWhenHttpFails() throws Exception {
+        // Router is off, so the LAN path is gone
+        relay.stop();
+
+        service.controlDevice(MAC, "off");
+        assertEquals(List.of(false), ble.commands);
+        assertEquals(1, path("http").failures());
+        assertEquals(1, path("ble").successes());
+
+        // The failed path waits out its cooldown behind BLE instead of costing every call a timeout
+        service.controlDevice(MAC, "on");
+        assertEquals(List.of(false, true), ble.commands);
+        assertEquals(1, path("http").failures());
+    }
+
+    @Test
+    void testFailsWhenEveryPathFails() {
+        relay.stop();
+        RelayDriver broken = new FakeBle() {
+            @Override
+            public void setRelay(String address, boolean on) {
+                throw new IllegalStateException("Failed to control device: Device " + address + " not found");
+            }
+        };
+        service.bleDriver = broken;
+
+        Exception e = assertThrows(Exception.class, () -> service.controlDevice(MAC, "off"));
+        assertTrue(e.getMessage().contains("not found"), e.getMessage());
+        // BLE may have got partway, so the caller must not assume the relay is unchanged
+        assertFalse(e instanceof CommandNotSentException);
+    }
+
+    @Test
+    void testReportsNotSentWhenNoPathReachedTheDevice() {
+        // HTTP is refused and BLE rejects the command before any GATT write
+        relay.stop();
+        service.bleDriver = new FakeBle() {
+            @Override
+            public void setRelay(String address, boolean on) throws Exception {
+                throw new CommandNotSentException("Device " + address + " not found in BlueZ cache");
+            }
+        };
+
+        assertThrows(CommandNotSentException.class, () -> service.controlDevice(MAC, "off"));
+    }
+
+    @Test
+    void testUnknownStateCountsAsFailedRead() {
+        relay.stop();
+        ble.state = "UNKNOWN";
+
+        assertEquals("UNKNOWN", service.getDeviceState(MAC));
+        assertEquals(1, path("ble").failures());
+        assertEquals(0, path("ble").successes());
+    }
+
+    @Test
+    void testInvalidAddressIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> service.controlDevice("change-me", "on"));
+        assertEquals("UNKNOWN", service.getDeviceState("change-me"));
+        assertTrue(service.getRelayPaths().isEmpty());
+    }
+
+    @Test
+    void testTransientErrorIsRetried() throws Exception {
+        service.retryMaxAttempts = 3;
+        service.retryBaseDelayMs = 10;
+        AtomicInteger attempts = new AtomicInteger();
+        OperationDeadline deadline = OperationDeadline.after(Duration.ofSeconds(5), "Command on");
+
+        String state = service.withRetries("Command on", deadline, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new BluezNotReadyException("Resource Not Ready");
+            }
+            return "ON";
+        });
+
+        assertEquals("ON", state);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void testRetriesStopAtMaxAttempts() {
+        service.retryMaxAttempts = 3;
+        service.retryBaseDelayMs = 10;
+        AtomicInteger attempts = new AtomicInteger();
+        OperationDeadline deadline = OperationDeadline.after(Duration.ofSeconds(5), "Command on");
+
+        assertThrows(DBusExecutionException.class, () -> service.withRetries("Command on", deadline, () -> {
+            attempts.incrementAndGet();
+            throw new DBusExecutionException("org.bluez.Error.InProgress: Operation already in progress");
+        }));
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    void testBackoffNeverOutlivesDeadline() {
+        service.retryMaxAttempts = 10;
+        service.retryBaseDelayMs = 200;
+        AtomicInteger attempts = new AtomicInteger();
+        OperationDeadline deadline = OperationDeadline.after(Duration.ofMillis(300), "Command on");
+
+        long start = System.nanoTime();
+        assertThrows(NoReply.class, () -> service.withRetries("Command on", deadline, () -> {
+            attempts.incrementAndGet();
+            throw new NoReply("No reply within specified time");
+        }));
+
+        // Gives up as soon as the next backoff would cross the deadline, not after it
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs < 300, "Retried for " + elapsedMs + "ms");
+        assertTrue(attempts.get() < 10, attempts.get() + " attempts");
+    }
+
+    @Test
+    void testPermanentErrorsAreNotRetried() {
+        service.retryMaxAttempts = 3;
+        service.retryBaseDelayMs = 10;
+        List<Exception> errors = List.of(new BluezNotSupportedException("Operation is not supported"),
+                new BluezInvalidArgumentsException("Invalid arguments"),
+                new DBusExecutionException("org.bluez.Error.Failed: Connection refused"),
+                new IllegalStateException("Unexpected response"));
+        for (Exception error : errors) {
+            AtomicInteger attempts = new AtomicInteger();
+            OperationDeadline deadline = OperationDeadline.after(Duration.ofSeconds(5), "Command on");
+
+            assertThrows(error.getClass(), () -> service.withRetries("Command on", deadline, () -> {
+                attempts.incrementAndGet();
+                throw error;
+            }));
+            assertEquals(1, attempts.get(), error.toString());
+        }
+    }
+
+    @Test
+    void testTransientErrorWhitelist() {
+        assertTrue(BluetoothService.isTransient(new BluezInProgressException("In Progress")));
+        assertTrue(BluetoothService.isTransient(new BluezNotReadyException("Resource Not Ready")));
+        assertTrue(BluetoothService.isTransient(new NoReply("No reply within specified time")));
+        assertTrue(BluetoothService.isTransient(new BluezFailedException("le-connection-abort-by-local")));
+        assertTrue(BluetoothService.isTransient(
+                new Exception("Write failed", new DBusExecutionException("org.bluez.Error.NotReady: Not Ready"))));
+
+        assertFalse(BluetoothService.isTransient(new BluezFailedException("Operation failed")));
+        assertFalse(BluetoothService.isTransient(new BluezNotSupportedException("Not supported")));
+        assertFalse(BluetoothService.isTransient(new BluezDoesNotExistException("Does not exist")));
+        assertFalse(BluetoothService.isTransient(new TimeoutException("Command on exceeded its 8000ms deadline")));
+    }
+
+    private RelayPathStatus path(String driver) {
+        return service.getRelayPaths().stream()
+                .filter(p -> p.driver().equals(driver))
+                .findFirst()
+                .orElseThrow();
+    }
+}
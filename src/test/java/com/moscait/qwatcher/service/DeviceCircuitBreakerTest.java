@@ -0,0 +1,107 @@
+package com.moscait.qwatcher.service;
+
+import com.moscait.qwatcher.model.CircuitBreakerStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceCircuitBreakerTest {
+
+    private static final String MAC = "88:13:BF:D6:84:86";
+
+    @Test
+    void testOpensAfterConsecutiveFailures() {
+        DeviceCircuitBreaker breaker = new DeviceCircuitBreaker(MAC, 3, Duration.ofMinutes(1));
+
+        breaker.recordFailure("NotReady");
+        breaker.recordFailure("NotReady");
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure("Connection refused");
+        assertFalse(breaker.allowRequest());
+        CircuitBreakerStatus status = breaker.snapshot();
+        assertEquals(CircuitBreakerStatus.STATE_OPEN, status.state());
+        assertEquals(3, status.consecutiveFailures());
+        assertEquals("Connection refused", status.lastError());
+    }
+
+    @Test
+    void testSuccessResetsFailureCount() {
+        DeviceCircuitBreaker breaker = new DeviceCircuitBreaker(MAC, 2, Duration.ofMinutes(1));
+
+        breaker.recordFailure("NotReady");
+        breaker.recordSuccess();
+        breaker.recordFailure("NotReady");
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(1, breaker.snapshot().consecutiveFailures());
+    }
+
+    @Test
+    void testRetryInCountsDownOpenPeriod() {
+        DeviceCircuitBreaker breaker = new DeviceCircuitBreaker(MAC, 1, Duration.ofMinutes(1));
+        assertEquals(Duration.ZERO, breaker.retryIn());
+
+        breaker.recordFailure("NotReady");
+
+        Duration retryIn = breaker.retryIn();
+        assertTrue(retryIn.compareTo(Duration.ofSeconds(50)) > 0 && retryIn.compareTo(Duration.ofMinutes(1)) <= 0,
+                "Retry in " + retryIn);
+        // Still open, so no probe yet
+        assertFalse(breaker.tryStartProbe());
+    }
+
+    @Test
+    void testProbeSuccessClosesCircuit() {
+        DeviceCircuitBreaker breaker = new DeviceCircuitBreaker(MAC, 1, Duration.ZERO);
+        breaker.recordFailure("NotReady");
+
+        assertTrue(breaker.tryStartProbe());
+        assertEquals(CircuitBreakerStatus.STATE_HALF_OPEN, breaker.snapshot().state());
+        // Only one probe at a time, and requests still fail fast while it runs
+        assertFalse(breaker.tryStartProbe());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        CircuitBreakerStatus status = breaker.snapshot();
+        assertEquals(CircuitBreakerStatus.STATE_CLOSED, status.state());
+        assertEquals(0, status.consecutiveFailures());
+        assertNull(status.openedAt());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void testProbeFailureReopensCircuit() {
+        DeviceCircuitBreaker breaker = new DeviceCircuitBreaker(MAC, 3, Duration.ofMillis(50));
+        breaker.recordFailure("NotReady");
+        breaker.recordFailure("NotReady");
+        breaker.recordFailure("NotReady");
+        assertFalse(breaker.tryStartProbe());
+
+        assertTrue(waitForProbe(breaker));
+        // A single failure while HALF_OPEN is enough, whatever the threshold
+        breaker.recordFailure("Still unreachable");
+
+        CircuitBreakerStatus status = breaker.snapshot();
+        assertEquals(CircuitBreakerStatus.STATE_OPEN, status.state());
+        assertEquals("Still unreachable", status.lastError());
+        assertFalse(breaker.allowRequest());
+        assertTrue(breaker.retryIn().compareTo(Duration.ZERO) > 0);
+    }
+
+    private static boolean waitForProbe(DeviceCircuitBreaker breaker) {
+        long until = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (System.nanoTime() - until < 0) {
+            if (breaker.tryStartProbe()) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        return false;
+    }
+}
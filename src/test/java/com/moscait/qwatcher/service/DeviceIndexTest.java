@@ -0,0 +1,99 @@
+package com.moscait.qwatcher.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceIndexTest {
+
+    @Test
+    void testMacRoundTripIsCanonical() {
+        long mac = DeviceIndex.parseMac("88:13:bf:d6:84:86");
+        assertEquals(0x8813BFD68486L, mac);
+        assertEquals("88:13:BF:D6:84:86", DeviceIndex.formatMac(mac));
+        assertEquals(mac, DeviceIndex.parseMac("88-13-BF-D6-84-86"));
+        assertEquals("FF:FF:FF:FF:FF:FF", DeviceIndex.canonical("ff:ff:ff:ff:ff:ff"));
+    }
+
+    @Test
+    void testInvalidMacIsRejected() {
+        assertEquals(DeviceIndex.NO_MAC, DeviceIndex.tryParseMac("change-me"));
+        assertEquals(DeviceIndex.NO_MAC, DeviceIndex.tryParseMac("88:13:BF:D6:84:8G"));
+        assertEquals(DeviceIndex.NO_MAC, DeviceIndex.tryParseMac(null));
+        assertThrows(IllegalArgumentException.class, () -> DeviceIndex.parseMac("88:13:BF:D6:84"));
+    }
+
+    @Test
+    void testLookupAcrossGrowthAndRemoval() {
+        DeviceIndex index = new DeviceIndex();
+        List<Long> macs = new ArrayList<>();
+        for (long i = 0; i < 5000; i++) {
+            long mac = 0x001A7D000000L + i * 7919;
+            macs.add(mac);
+            assertSame(index.getOrCreate(mac), index.getOrCreate(mac));
+        }
+        assertEquals(5000, index.size());
+
+        // Remove every other entry; the rest must stay reachable through their probe chains
+        for (int i = 0; i < macs.size(); i += 2) {
+            index.remove(macs.get(i));
+        }
+        assertEquals(2500, index.size());
+        for (int i = 0; i < macs.size(); i++) {
+            if (i % 2 == 0) {
+                assertNull(index.get(macs.get(i)));
+            } else {
+                assertNotNull(index.get(macs.get(i)));
+            }
+        }
+    }
+
+    @Test
+    void testRpcLockIsCreatedOnFirstUse() {
+        DeviceIndex.Entry entry = new DeviceIndex().getOrCreate(0x8813BFD68486L);
+        assertFalse(entry.rpcInFlight());
+
+        ReentrantLock lock = entry.rpcLock();
+        assertSame(lock, entry.rpcLock());
+        assertTrue(lock.isFair());
+        lock.lock();
+        try {
+            assertTrue(entry.rpcInFlight());
+        } finally {
+            lock.unlock();
+        }
+        assertFalse(entry.rpcInFlight());
+    }
+
+    @Test
+    void testRetainGenerationKeepsManualDevices() {
+        DeviceIndex index = new DeviceIndex();
+        DeviceIndex.Entry manual = index.getOrCreate(1L);
+        manual.manual = true;
+        manual.objectPath = "/org/bluez/hci0/dev_00_00_00_00_00_01";
+        manual.generation = 1;
+        DeviceIndex.Entry stale = index.getOrCreate(2L);
+        stale.generation = 1;
+        DeviceIndex.Entry fresh = index.getOrCreate(3L);
+        fresh.generation = 2;
+
+        index.retainGeneration(2);
+
+        assertSame(manual, index.get(1L));
+        // BlueZ dropped it, so its old handle must not be used any more
+        assertNull(manual.objectPath);
+        assertNull(manual.handle);
+        assertNull(index.get(2L));
+        assertSame(fresh, index.get(3L));
+    }
+}
@@ -0,0 +1,61 @@
+package com.moscait.qwatcher.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpRpcRelayDriverTest {
+
+    private static final String MAC = "88:13:BF:D6:84:86";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ShellyRpcStub relay;
+    private HttpRpcRelayDriver driver;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        relay = new ShellyRpcStub(false);
+
+        driver = new HttpRpcRelayDriver();
+        driver.objectMapper = mapper;
+        driver.timeoutMs = 1000;
+        driver.configHosts = Optional.of(List.of(MAC.toLowerCase() + "=" + relay.host()));
+        driver.init();
+    }
+
+    @AfterEach
+    void stopStub() {
+        relay.stop();
+        driver.close();
+    }
+
+    @Test
+    void testSetAndGetRelayState() throws Exception {
+        assertTrue(driver.supports(MAC));
+        assertFalse(driver.supports("11:22:33:44:55:66"));
+
+        driver.setRelay(MAC, true);
+        assertEquals("Switch.Set", relay.lastMethod);
+        assertEquals("ON", driver.getRelayState(MAC));
+        assertEquals("Switch.GetStatus", relay.lastMethod);
+
+        driver.setRelay(MAC, false);
+        assertEquals("OFF", driver.getRelayState(MAC));
+    }
+
+    @Test
+    void testUnreachableHostFails() {
+        relay.stop();
+        assertThrows(Exception.class, () -> driver.setRelay(MAC, true));
+    }
+}
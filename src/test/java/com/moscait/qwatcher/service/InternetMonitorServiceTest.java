@@ -0,0 +1,246 @@
+package com.moscait.qwatcher.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InternetMonitorServiceTest {
+
+    private static final String MAC = "88:13:BF:D6:84:86";
+    private static final long OFF_AT = 1_000_000L;
+    private static final long JOURNALED_AT = 1_060_000L;
+
+    @TempDir
+    Path dir;
+
+    private final List<InternetMonitorService> services = new ArrayList<>();
+    private int instances;
+
+    /** Plug stand-in: reports {@link #state} and records every command sent to it. */
+    static class FakePlug extends BluetoothService {
+        volatile String state;
+        volatile boolean failCommands;
+        volatile CountDownLatch commandGate;
+        final List<String> commands = new CopyOnWriteArrayList<>();
+
+        FakePlug(String state) {
+            this.state = state;
+        }
+
+        @Override
+        public String getDeviceState(String address) {
+            return state;
+        }
+
+        @Override
+        public void controlDevice(String address, String command) throws Exception {
+            commands.add(command);
+            if (commandGate != null) {
+                commandGate.await();
+            }
+            // The write lands either way; a failure models a timeout waiting for the reply
+            state = command.toUpperCase();
+            if (failCommands) {
+                throw new Exception("Command " + command + " to " + address + " exceeded its 8000ms deadline");
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(InternetMonitorService::tearDown);
+    }
+
+    @Test
+    void testRecoverResumesMonitoringWhenDeviceIsOn() {
+        for (PowerCycleState journaled : List.of(PowerCycleState.TURNING_OFF, PowerCycleState.OFF,
+                PowerCycleState.TURNING_ON)) {
+            FakePlug plug = new FakePlug("ON");
+            InternetMonitorService monitor = newMonitor(plug, journaled, 60);
+
+            monitor.recover();
+
+            Map<String, Object> status = monitor.getMonitorStatus();
+            assertEquals("MONITORING", status.get("powerCycleState"), journaled.name());
+            assertTrue(plug.commands.isEmpty(), journaled.name());
+        }
+    }
+
+    @Test
+    void testRecoverWaitsOutDelayWhenDeviceIsOffOrUnknown() {
+        for (String actual : List.of("OFF", "UNKNOWN")) {
+            for (PowerCycleState journaled : List.of(PowerCycleState.TURNING_OFF, PowerCycleState.OFF,
+                    PowerCycleState.TURNING_ON)) {
+                FakePlug plug = new FakePlug(actual);
+                InternetMonitorService monitor = newMonitor(plug, journaled, 60);
+
+                monitor.recover();
+
+                // An interrupted TURNING_OFF counts the delay from when the command was sent
+                long expectedOffAt = journaled == PowerCycleState.TURNING_OFF ? JOURNALED_AT : OFF_AT;
+                Map<String, Object> status = monitor.getMonitorStatus();
+                String scenario = journaled + " with device " + actual;
+                assertEquals("OFF", status.get("powerCycleState"), scenario);
+                assertEquals(expectedOffAt, status.get("deviceTurnedOffAt"), scenario);
+                assertTrue(plug.commands.isEmpty(), scenario);
+            }
+        }
+    }
+
+    @Test
+    void testRecoverTurnsDeviceOnOnceDelayHasPassed() throws Exception {
+        FakePlug plug = new FakePlug("OFF");
+        InternetMonitorService monitor = newMonitor(plug, PowerCycleState.OFF, 2);
+
+        monitor.recover();
+
+        awaitState(monitor, "MONITORING");
+        assertEquals(List.of("on"), plug.commands);
+    }
+
+    @Test
+    void testFailedOffThatLandedStillSchedulesTurnOn() throws Exception {
+        FakePlug plug = new FakePlug("ON");
+        plug.failCommands = true;
+        InternetMonitorService monitor = newMonitor(plug, null, 60);
+        monitor.hostService = offlineHost();
+
+        monitor.checkInternetAndManageDevice();
+
+        Map<String, Object> status = monitor.getMonitorStatus();
+        assertEquals("OFF", status.get("powerCycleState"));
+        assertTrue(status.containsKey("powerCycleResumeAt"));
+        assertEquals(PowerCycleState.OFF, monitor.journal.readLast().state());
+    }
+
+    @Test
+    void testFailedOffThatDidNotLandResumesMonitoring() {
+        // Out of range: BlueZ has no handle for it, so its state can't be read either
+        FakePlug plug = new FakePlug("UNKNOWN") {
+            @Override
+            public void controlDevice(String address, String command) throws Exception {
+                commands.add(command);
+                throw new CommandNotSentException(
+                        "Device " + address + " not found in BlueZ cache. Ensure it is scanned.");
+            }
+        };
+        InternetMonitorService monitor = newMonitor(plug, null, 60);
+        monitor.hostService = offlineHost();
+
+        monitor.checkInternetAndManageDevice();
+
+        Map<String, Object> status = monitor.getMonitorStatus();
+        assertEquals("MONITORING", status.get("powerCycleState"));
+        assertEquals(false, status.get("deviceCurrentlyOff"));
+        assertFalse(status.containsKey("powerCycleResumeAt"));
+        assertEquals(PowerCycleState.MONITORING, monitor.journal.readLast().state());
+        assertEquals(List.of("off"), plug.commands);
+    }
+
+    @Test
+    void testInvalidTargetIsNeverPowerCycled() {
+        FakePlug plug = new FakePlug("UNKNOWN");
+        InternetMonitorService monitor = newMonitor(plug, null, 60);
+        monitor.hostService = offlineHost();
+        monitor.updateSettings("change-me", 0, 60);
+
+        monitor.checkInternetAndManageDevice();
+
+        assertEquals("MONITORING", monitor.getMonitorStatus().get("powerCycleState"));
+        assertTrue(plug.commands.isEmpty());
+        assertNull(monitor.journal.readLast());
+    }
+
+    @Test
+    void testTurnOnRetriesBackOffUpToTheCap() {
+        assertEquals(Duration.ofMinutes(1), InternetMonitorService.turnOnRetryDelay(1));
+        assertEquals(Duration.ofMinutes(2), InternetMonitorService.turnOnRetryDelay(2));
+        assertEquals(Duration.ofMinutes(16), InternetMonitorService.turnOnRetryDelay(5));
+        assertEquals(Duration.ofMinutes(30), InternetMonitorService.turnOnRetryDelay(6));
+        assertEquals(Duration.ofMinutes(30), InternetMonitorService.turnOnRetryDelay(1000));
+    }
+
+    @Test
+    void testUpdateSettingsDoesNotWaitForRelayIo() throws Exception {
+        FakePlug plug = new FakePlug("ON");
+        plug.commandGate = new CountDownLatch(1);
+        InternetMonitorService monitor = newMonitor(plug, null, 60);
+        monitor.hostService = offlineHost();
+
+        Thread check = new Thread(monitor::checkInternetAndManageDevice);
+        check.start();
+        try {
+            while (plug.commands.isEmpty()) {
+                Thread.sleep(10);
+            }
+            assertTimeoutPreemptively(Duration.ofSeconds(1), () -> monitor.updateSettings(MAC, 10, 5));
+            assertEquals("TURNING_OFF", monitor.getMonitorStatus().get("powerCycleState"));
+        } finally {
+            plug.commandGate.countDown();
+            check.join();
+        }
+        assertEquals("OFF", monitor.getMonitorStatus().get("powerCycleState"));
+    }
+
+    private InternetMonitorService newMonitor(FakePlug plug, PowerCycleState journaled, int delayMinutes) {
+        Path instanceDir = dir.resolve("monitor-" + instances++);
+
+        PowerCycleJournal journal = new PowerCycleJournal();
+        journal.stateFile = instanceDir.resolve("power-cycle.wal").toString();
+        if (journaled != null) {
+            long offAt = journaled == PowerCycleState.TURNING_OFF ? 0 : OFF_AT;
+            journal.append(new PowerCycleJournal.Entry(JOURNALED_AT, journaled, MAC, offAt));
+        }
+
+        MonitorHistory history = new MonitorHistory();
+        history.historyDir = instanceDir.resolve("history").toString();
+        history.retentionDays = 30;
+        history.objectMapper = new ObjectMapper();
+        history.init();
+
+        InternetMonitorService monitor = new InternetMonitorService();
+        monitor.bluetoothService = plug;
+        monitor.journal = journal;
+        monitor.history = history;
+        monitor.configOfflineThresholdMinutes = 0;
+        monitor.configPowerCycleDelayMinutes = delayMinutes;
+        monitor.configTargetDeviceId = MAC;
+        monitor.eventAggregationWindowMinutes = 60;
+        monitor.init();
+        services.add(monitor);
+        return monitor;
+    }
+
+    private static HostService offlineHost() {
+        return new HostService() {
+            @Override
+            public boolean isInternetAvailable() {
+                return false;
+            }
+        };
+    }
+
+    private static void awaitState(InternetMonitorService monitor, String state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!state.equals(monitor.getMonitorStatus().get("powerCycleState")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(state, monitor.getMonitorStatus().get("powerCycleState"));
+    }
+}
@@ -0,0 +1,131 @@
+package com.moscait.qwatcher.service;
+
+import com.moscait.qwatcher.model.MonitorEvent;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MonitorEventLogTest {
+
+    private final List<MonitorEvent> closed = new ArrayList<>();
+
+    @Test
+    void testRepeatsCollapseIntoOneEntry() {
+        MonitorEventLog log = new MonitorEventLog(100, Duration.ofMinutes(60), closed::add);
+        for (int i = 1; i <= 10_000; i++) {
+            assertEquals(i, log.record(MonitorEvent.TYPE_ERROR, "Failed to turn device OFF: %s", "timeout " + i));
+        }
+        log.record(MonitorEvent.TYPE_INFO, "Monitor initialized. Threshold: %dm, Delay: %dm", 5, 2);
+
+        List<MonitorEvent> events = log.snapshot();
+        assertEquals(2, events.size());
+        assertEquals("Monitor initialized. Threshold: 5m, Delay: 2m", events.get(0).message());
+        MonitorEvent repeated = events.get(1);
+        assertEquals(10_000, repeated.count());
+        assertEquals("Failed to turn device OFF: timeout 10000", repeated.message());
+        assertTrue(repeated.firstSeen() <= repeated.timestamp());
+    }
+
+    @Test
+    void testRepeatMovesToHeadAndLogStaysBounded() {
+        MonitorEventLog log = new MonitorEventLog(3, Duration.ofMinutes(60), closed::add);
+        log.record(MonitorEvent.TYPE_WARNING, "No target device configured.");
+        log.record(MonitorEvent.TYPE_INFO, "Event %d", 1);
+        log.record(MonitorEvent.TYPE_SUCCESS, "Device turned ON: %s", "A");
+        log.record(MonitorEvent.TYPE_WARNING, "No target device configured.");
+
+        List<MonitorEvent> events = log.snapshot();
+        assertEquals("No target device configured.", events.get(0).message());
+        assertEquals(2, events.get(0).count());
+
+        log.record(MonitorEvent.TYPE_ERROR, "Error in monitor task: %s", "boom");
+        assertEquals(3, log.size());
+    }
+
+    @Test
+    void testRepeatOutsideWindowStartsNewEntry() {
+        MonitorEventLog log = new MonitorEventLog(100, Duration.ZERO, closed::add);
+        log.record(MonitorEvent.TYPE_WARNING, "No target device configured.");
+        sleepBriefly();
+        assertEquals(1, log.record(MonitorEvent.TYPE_WARNING, "No target device configured."));
+        assertEquals(2, log.size());
+    }
+
+    @Test
+    void testAggregateClosedWhenWindowPasses() {
+        MonitorEventLog log = new MonitorEventLog(100, Duration.ofMillis(50), closed::add);
+        log.record(MonitorEvent.TYPE_INFO, "Monitor initialized.");
+        log.record(MonitorEvent.TYPE_ERROR, "Error in monitor task: %s", "a");
+        log.record(MonitorEvent.TYPE_ERROR, "Error in monitor task: %s", "b");
+        log.record(MonitorEvent.TYPE_ERROR, "Error in monitor task: %s", "c");
+        sleep(100);
+        log.closeExpired();
+
+        // Single occurrences are already in the history in full
+        assertEquals(1, closed.size());
+        MonitorEvent summary = closed.get(0);
+        assertEquals(MonitorEvent.TYPE_ERROR, summary.type());
+        assertEquals("Error in monitor task: c", summary.message());
+        assertEquals(3, summary.count());
+        assertTrue(summary.firstSeen() <= summary.timestamp());
+
+        log.closeExpired();
+        assertEquals(1, closed.size());
+    }
+
+    @Test
+    void testAggregateClosedBeforeRepeatStartsNewEntry() {
+        MonitorEventLog log = new MonitorEventLog(100, Duration.ofMillis(50), closed::add);
+        log.record(MonitorEvent.TYPE_WARNING, "No target device configured.");
+        log.record(MonitorEvent.TYPE_WARNING, "No target device configured.");
+        log.record(MonitorEvent.TYPE_WARNING, "No target device configured.");
+        sleep(100);
+
+        assertEquals(1, log.record(MonitorEvent.TYPE_WARNING, "No target device configured."));
+        assertEquals(1, closed.size());
+        assertEquals(3, closed.get(0).count());
+    }
+
+    @Test
+    void testEvictedAggregateIsClosed() {
+        MonitorEventLog log = new MonitorEventLog(2, Duration.ofMinutes(60), closed::add);
+        log.record(MonitorEvent.TYPE_ERROR, "Failed to turn device OFF: %s", "timeout");
+        log.record(MonitorEvent.TYPE_ERROR, "Failed to turn device OFF: %s", "timeout");
+        log.record(MonitorEvent.TYPE_INFO, "Event %d", 1);
+        assertTrue(closed.isEmpty());
+
+        log.record(MonitorEvent.TYPE_INFO, "Other %d", 2);
+        assertEquals(1, closed.size());
+        assertEquals("Failed to turn device OFF: timeout", closed.get(0).message());
+        assertEquals(2, closed.get(0).count());
+    }
+
+    @Test
+    void testCloseAllFlushesOpenAggregates() {
+        MonitorEventLog log = new MonitorEventLog(100, Duration.ofMinutes(60), closed::add);
+        for (int i = 0; i < 5; i++) {
+            log.record(MonitorEvent.TYPE_ERROR, "Error in monitor task: %s", "boom");
+        }
+        log.closeAll();
+
+        assertEquals(1, closed.size());
+        assertEquals(5, closed.get(0).count());
+    }
+
+    private static void sleepBriefly() {
+        sleep(5);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.moscait.qwatcher.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.moscait.qwatcher.model.HistoryRecord;
+import com.moscait.qwatcher.model.MonitorEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MonitorHistoryTest {
+
+    @TempDir
+    Path dir;
+
+    private MonitorHistory history;
+
+    @BeforeEach
+    void setUp() {
+        history = newHistory();
+        history.append(HistoryRecord.KIND_EVENT, MonitorEvent.TYPE_INFO, "Monitor initialized.", 1);
+        history.append(HistoryRecord.KIND_TRANSITION, "TURNING_OFF", "88:13:BF:D6:84:86", 1);
+        history.append(HistoryRecord.KIND_EVENT, MonitorEvent.TYPE_ERROR, "Failed to turn device OFF: \"busy\"", 4);
+        history.append(HistoryRecord.KIND_TRANSITION, "MONITORING", "88:13:BF:D6:84:86", 1);
+    }
+
+    @Test
+    void testCursorResumesAfterLastSeq() throws Exception {
+        StringWriter first = new StringWriter();
+        assertEquals(2, history.export(new MonitorHistory.Query(0, null, null, Set.of(), 2), false, first));
+
+        StringWriter rest = new StringWriter();
+        assertEquals(2, history.export(new MonitorHistory.Query(2, null, null, Set.of(), 0), false, rest));
+        assertTrue(rest.toString().startsWith("{\"seq\":3,"));
+    }
+
+    @Test
+    void testTypeFilterAndCsv() throws Exception {
+        StringWriter out = new StringWriter();
+        long written = history.export(new MonitorHistory.Query(0, null, null, Set.of("ERROR"), 0), true, out);
+
+        assertEquals(1, written);
+        String[] lines = out.toString().split("\n");
+        assertEquals("seq,timestamp,kind,type,count,message,firstSeen,lastSeen", lines[0]);
+        assertTrue(lines[1].startsWith("3,"));
+        assertTrue(lines[1].endsWith(",event,ERROR,4,\"Failed to turn device OFF: \"\"busy\"\"\",,"));
+
+        StringWriter transitions = new StringWriter();
+        assertEquals(2, history.export(new MonitorHistory.Query(0, null, null, Set.of("TRANSITION"), 0), false,
+                transitions));
+    }
+
+    @Test
+    void testSummaryCarriesFinalCountAndSpan() throws Exception {
+        history.appendSummary(new MonitorEvent(2_000, MonitorEvent.TYPE_ERROR, "Failed to turn device OFF: busy", 6,
+                1_000));
+
+        StringWriter out = new StringWriter();
+        assertEquals(1, history.export(new MonitorHistory.Query(0, null, null, Set.of("SUMMARY"), 0), false, out));
+        HistoryRecord summary = new ObjectMapper().readValue(out.toString(), HistoryRecord.class);
+        assertEquals(HistoryRecord.KIND_SUMMARY, summary.kind());
+        assertEquals(6, summary.count());
+        assertEquals(1_000L, summary.firstSeen());
+        assertEquals(2_000L, summary.lastSeen());
+
+        StringWriter csv = new StringWriter();
+        history.export(new MonitorHistory.Query(4, null, null, Set.of(), 0), true, csv);
+        assertTrue(csv.toString().split("\n")[1].endsWith(",summary,ERROR,6,\"Failed to turn device OFF: busy\",1000,2000"));
+    }
+
+    @Test
+    void testSequenceContinuesAfterRestart() throws Exception {
+        MonitorHistory restarted = newHistory();
+        restarted.append(HistoryRecord.KIND_EVENT, MonitorEvent.TYPE_INFO, "Monitor initialized.", 1);
+
+        StringWriter out = new StringWriter();
+        assertEquals(1, restarted.export(new MonitorHistory.Query(4, null, null, Set.of(), 0), false, out));
+        assertTrue(out.toString().startsWith("{\"seq\":5,"));
+    }
+
+    @Test
+    void testTimeRangeExcludesOutside() throws Exception {
+        StringWriter out = new StringWriter();
+        assertEquals(0, history.export(new MonitorHistory.Query(0, null, 0L, Set.of(), 0), false, out));
+    }
+
+    private MonitorHistory newHistory() {
+        MonitorHistory h = new MonitorHistory();
+        h.historyDir = dir.toString();
+        h.retentionDays = 30;
+        h.objectMapper = new ObjectMapper();
+        h.init();
+        return h;
+    }
+}
@@ -0,0 +1,73 @@
+package com.moscait.qwatcher.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationDeadlineTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testCallReturnsResultWithinBudget() throws Exception {
+        OperationDeadline deadline = OperationDeadline.after(Duration.ofSeconds(5), "Read");
+
+        assertEquals("ON", deadline.call(executor, () -> "ON"));
+    }
+
+    @Test
+    void testBlockingCallIsCutOffAtDeadline() {
+        CountDownLatch never = new CountDownLatch(1);
+        OperationDeadline deadline = OperationDeadline.after(Duration.ofMillis(200), "Connect");
+
+        long start = System.nanoTime();
+        TimeoutException e = assertThrows(TimeoutException.class, () -> deadline.call(executor, () -> {
+            // Stands in for a D-Bus call that only gives up after its own default timeout
+            never.await();
+            return null;
+        }));
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(elapsedMs < 2000, "Waited " + elapsedMs + "ms");
+        assertEquals("Connect exceeded its 200ms deadline", e.getMessage());
+    }
+
+    @Test
+    void testCallRethrowsCauseOfFailure() {
+        OperationDeadline deadline = OperationDeadline.after(Duration.ofSeconds(5), "Write");
+
+        IOException e = assertThrows(IOException.class, () -> deadline.call(executor, () -> {
+            throw new IOException("org.bluez.Error.Failed");
+        }));
+        assertEquals("org.bluez.Error.Failed", e.getMessage());
+    }
+
+    @Test
+    void testLockWaitIsCutOffAtDeadline() throws Exception {
+        ReentrantLock rpcLock = new ReentrantLock(true);
+        // Another caller is mid-RPC on the same device
+        executor.submit(rpcLock::lock).get();
+        OperationDeadline deadline = OperationDeadline.after(Duration.ofMillis(100), "State query");
+
+        TimeoutException e = assertThrows(TimeoutException.class, () -> deadline.lock(rpcLock));
+        assertEquals("State query exceeded its 100ms deadline", e.getMessage());
+        assertFalse(rpcLock.isHeldByCurrentThread());
+    }
+}
@@ -0,0 +1,77 @@
+package com.moscait.qwatcher.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PowerCycleJournalTest {
+
+    private static final String MAC = "88:13:BF:D6:84:86";
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private PowerCycleJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        file = dir.resolve("power-cycle.wal");
+        journal = newJournal();
+    }
+
+    @Test
+    void testReadLastOfMissingFileIsNull() {
+        assertNull(journal.readLast());
+    }
+
+    @Test
+    void testReadLastReturnsNewestRecord() {
+        journal.append(new PowerCycleJournal.Entry(1000, PowerCycleState.TURNING_OFF, MAC, 0));
+        journal.append(new PowerCycleJournal.Entry(2000, PowerCycleState.OFF, MAC, 1500));
+
+        assertEquals(new PowerCycleJournal.Entry(2000, PowerCycleState.OFF, MAC, 1500), newJournal().readLast());
+    }
+
+    @Test
+    void testTornLastLineIsIgnored() throws Exception {
+        journal.append(new PowerCycleJournal.Entry(1000, PowerCycleState.OFF, MAC, 1000));
+        // Crash halfway through writing the next record
+        Files.writeString(file, "2000|TURNING_", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        PowerCycleJournal restarted = newJournal();
+        assertEquals(PowerCycleState.OFF, restarted.readLast().state());
+
+        // The next record must not be glued onto the torn fragment
+        restarted.append(new PowerCycleJournal.Entry(3000, PowerCycleState.TURNING_ON, MAC, 1000));
+        assertEquals(new PowerCycleJournal.Entry(3000, PowerCycleState.TURNING_ON, MAC, 1000),
+                newJournal().readLast());
+    }
+
+    @Test
+    void testCompactsAfterMaxRecords() throws Exception {
+        for (int i = 1; i <= PowerCycleJournal.MAX_RECORDS; i++) {
+            journal.append(new PowerCycleJournal.Entry(i, PowerCycleState.MONITORING, MAC, 0));
+        }
+        assertEquals(PowerCycleJournal.MAX_RECORDS, Files.readAllLines(file).size());
+
+        journal.append(new PowerCycleJournal.Entry(100, PowerCycleState.OFF, MAC, 100));
+
+        assertEquals(1, Files.readAllLines(file).size());
+        assertEquals(new PowerCycleJournal.Entry(100, PowerCycleState.OFF, MAC, 100), newJournal().readLast());
+    }
+
+    private PowerCycleJournal newJournal() {
+        PowerCycleJournal j = new PowerCycleJournal();
+        j.stateFile = file.toString();
+        return j;
+    }
+}
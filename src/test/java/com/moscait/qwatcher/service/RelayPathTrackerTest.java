@@ -0,0 +1,96 @@
+package com.moscait.qwatcher.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RelayPathTrackerTest {
+
+    private static final String MAC = "88:13:BF:D6:84:86";
+
+    private final RelayDriver http = driver("http");
+    private final RelayDriver ble = driver("ble");
+    private final RelayDriver cloud = driver("cloud");
+
+    @Test
+    void testUntriedPathsKeepDeclaredOrder() {
+        RelayPathTracker tracker = new RelayPathTracker(Duration.ofMinutes(1));
+        assertEquals(List.of(http, ble), tracker.order(MAC, List.of(http, ble)));
+
+        // A measured path must not be overtaken by one that was never tried
+        tracker.recordSuccess(MAC, "http", 5);
+        assertEquals(List.of(http, ble), tracker.order(MAC, List.of(http, ble)));
+    }
+
+    @Test
+    void testMeasuredPathsOrderedByLatency() {
+        RelayPathTracker tracker = new RelayPathTracker(Duration.ofMinutes(1));
+        tracker.recordSuccess(MAC, "http", 400);
+        tracker.recordSuccess(MAC, "ble", 900);
+        tracker.recordSuccess(MAC, "cloud", 80);
+
+        assertEquals(List.of(cloud, http, ble), tracker.order(MAC, List.of(http, ble, cloud)));
+    }
+
+    @Test
+    void testMeasuredPathsSortAroundUntriedOne() {
+        RelayPathTracker tracker = new RelayPathTracker(Duration.ofMinutes(1));
+        tracker.recordSuccess(MAC, "http", 100);
+        tracker.recordSuccess(MAC, "cloud", 10);
+
+        assertEquals(List.of(cloud, ble, http), tracker.order(MAC, List.of(http, ble, cloud)));
+    }
+
+    @Test
+    void testFailedPathGoesLastUntilCooldownPasses() throws Exception {
+        RelayPathTracker tracker = new RelayPathTracker(Duration.ofMinutes(1));
+        tracker.recordSuccess(MAC, "http", 5);
+        tracker.recordFailure(MAC, "http", 1500, "Connection refused");
+        assertEquals(List.of(ble, http), tracker.order(MAC, List.of(http, ble)));
+
+        RelayPathTracker recovering = new RelayPathTracker(Duration.ofMillis(10));
+        recovering.recordSuccess(MAC, "http", 5);
+        recovering.recordFailure(MAC, "http", 1500, "Connection refused");
+        Thread.sleep(50);
+        assertEquals(List.of(http, ble), recovering.order(MAC, List.of(http, ble)));
+    }
+
+    @Test
+    void testStatsAreKeptPerDevice() {
+        RelayPathTracker tracker = new RelayPathTracker(Duration.ofMinutes(1));
+        tracker.recordFailure(MAC, "http", 1500, "Connection refused");
+
+        assertEquals(List.of(http, ble), tracker.order("11:22:33:44:55:66", List.of(http, ble)));
+    }
+
+    private static RelayDriver driver(String name) {
+        return new RelayDriver() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public boolean supports(String address) {
+                return true;
+            }
+
+            @Override
+            public void setRelay(String address, boolean on) {
+            }
+
+            @Override
+            public String getRelayState(String address) {
+                return "UNKNOWN";
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+package com.moscait.qwatcher.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal stand-in for a Shelly Gen2 {@code /rpc} endpoint on loopback that
+ * answers {@code Switch.Set} and {@code Switch.GetStatus} for one relay.
+ * Stop it to simulate the relay dropping off the LAN.
+ */
+final class ShellyRpcStub {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    volatile boolean relayOn;
+    volatile String lastMethod;
+
+    ShellyRpcStub(boolean relayOn) throws IOException {
+        this.relayOn = relayOn;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/rpc", exchange -> {
+            requests.incrementAndGet();
+            JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+            lastMethod = request.get("method").asText();
+            String result;
+            if ("Switch.Set".equals(lastMethod)) {
+                boolean wasOn = this.relayOn;
+                this.relayOn = request.get("params").get("on").asBoolean();
+                result = "{\"was_on\":" + wasOn + "}";
+            } else {
+                result = "{\"id\":0,\"output\":" + this.relayOn + "}";
+            }
+            byte[] body = ("{\"id\":" + request.get("id").asInt() + ",\"src\":\"stub\",\"result\":" + result + "}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    /** The {@code host:port} to map the relay's MAC to. */
+    String host() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+}
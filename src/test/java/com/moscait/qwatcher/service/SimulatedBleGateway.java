@@ -0,0 +1,336 @@
+package com.moscait.qwatcher.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.freedesktop.dbus.exceptions.DBusExecutionException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Simulated radio behind {@link BleGateway}: Shelly relays that speak the
+ * length-prefixed GATT RPC, plus a churning crowd of non-Shelly advertisers.
+ * Frames that arrive interleaved or without a length prefix are counted as
+ * garbled instead of being answered.
+ */
+final class SimulatedBleGateway implements BleGateway {
+
+    // Non-Shelly advertisers in range at any time; the crowd shifts on every scan
+    static final int ADVERTISERS = 20;
+    private static final int ADVERTISER_CHURN = 5;
+
+    private static final String TX_UUID = "5f6d4f53-5f52-5043-5f74-785f63746c5f";
+    private static final String DATA_UUID = "5f6d4f53-5f52-5043-5f64-6174615f5f5f";
+
+    // Rough BlueZ round-trips: link setup and one GATT write or read
+    private static final long CONNECT_MS = 30;
+    private static final long GATT_MS = 3;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Relay> relays = new LinkedHashMap<>();
+    private final BooleanSupplier failing;
+    private final AtomicLong advertiserBase = new AtomicLong();
+    private final AtomicInteger garbledFrames = new AtomicInteger();
+
+    SimulatedBleGateway(List<String> addresses, BooleanSupplier failing) {
+        this.failing = failing;
+        for (int i = 0; i < addresses.size(); i++) {
+            relays.put(addresses.get(i), new Relay(addresses.get(i), "ShellyPlus1-sim" + (i + 1)));
+        }
+    }
+
+    @Override
+    public void ensureDiscovering() {
+        radioCall();
+    }
+
+    @Override
+    public List<DeviceHandle> devices() {
+        List<DeviceHandle> devices = new ArrayList<>(relays.values());
+        long base = advertiserBase.getAndAdd(ADVERTISER_CHURN);
+        for (long i = base; i < base + ADVERTISERS; i++) {
+            devices.add(new Advertiser(i));
+        }
+        return devices;
+    }
+
+    /** Relays the service currently holds a connection to. */
+    int openConnections() {
+        int open = 0;
+        for (Relay relay : relays.values()) {
+            if (relay.isConnected()) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    int garbledFrames() {
+        return garbledFrames.get();
+    }
+
+    /** Most devices a single scan can report. */
+    int visibleDevices() {
+        return relays.size() + ADVERTISERS;
+    }
+
+    private void radioCall() {
+        if (failing.getAsBoolean()) {
+            throw new DBusExecutionException("org.bluez.Error.NotReady: Resource Not Ready");
+        }
+    }
+
+    private static String objectPath(String address) {
+        return "/org/bluez/hci0/dev_" + address.replace(':', '_');
+    }
+
+    private final class Relay implements DeviceHandle {
+
+        private final String address;
+        private final String name;
+        private final Characteristic tx = new Tx();
+        private final Characteristic data = new Data();
+
+        private boolean connected;
+        private boolean output = true;
+        // Frame being assembled from the length prefix and the data chunks
+        private int expected = -1;
+        private final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        private byte[] response = new byte[0];
+
+        Relay(String address, String name) {
+            this.address = address;
+            this.name = name;
+        }
+
+        @Override
+        public String address() {
+            return address;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public String objectPath() {
+            return SimulatedBleGateway.objectPath(address);
+        }
+
+        @Override
+        public synchronized boolean isConnected() {
+            // An adapter outage drops every link
+            if (failing.getAsBoolean()) {
+                connected = false;
+            }
+            return connected;
+        }
+
+        @Override
+        public boolean isServicesResolved() {
+            return isConnected();
+        }
+
+        @Override
+        public Boolean isPaired() {
+            return false;
+        }
+
+        @Override
+        public void connect() throws InterruptedException {
+            Thread.sleep(CONNECT_MS);
+            synchronized (this) {
+                radioCall();
+                connected = true;
+            }
+        }
+
+        @Override
+        public synchronized void disconnect() {
+            connected = false;
+        }
+
+        @Override
+        public Characteristic characteristic(String uuid) {
+            if (TX_UUID.equalsIgnoreCase(uuid)) {
+                return tx;
+            }
+            return DATA_UUID.equalsIgnoreCase(uuid) ? data : null;
+        }
+
+        private void gattCall() throws InterruptedException {
+            Thread.sleep(GATT_MS);
+            radioCall();
+            if (!connected) {
+                throw new DBusExecutionException("org.bluez.Error.NotConnected: Not Connected");
+            }
+        }
+
+        private synchronized void startFrame(byte[] value) throws InterruptedException {
+            gattCall();
+            if (value.length != 4) {
+                garbledFrames.incrementAndGet();
+                return;
+            }
+            // A new prefix abandons whatever a timed-out caller left half written
+            expected = ByteBuffer.wrap(value).getInt();
+            frame.reset();
+            response = new byte[0];
+        }
+
+        private synchronized void appendFrame(byte[] value) throws InterruptedException {
+            gattCall();
+            if (expected < 0 || frame.size() + value.length > expected) {
+                garbledFrames.incrementAndGet();
+                expected = -1;
+                frame.reset();
+                return;
+            }
+            frame.writeBytes(value);
+            if (frame.size() == expected) {
+                response = answer(frame.toByteArray());
+                expected = -1;
+                frame.reset();
+            }
+        }
+
+        private synchronized byte[] readResponse() throws InterruptedException {
+            gattCall();
+            byte[] value = response;
+            response = new byte[0];
+            return value;
+        }
+
+        private byte[] answer(byte[] request) {
+            JsonNode rpc;
+            try {
+                rpc = MAPPER.readTree(request);
+            } catch (IOException e) {
+                garbledFrames.incrementAndGet();
+                return new byte[0];
+            }
+            ObjectNode reply = MAPPER.createObjectNode();
+            reply.set("id", rpc.get("id"));
+            reply.put("src", name.toLowerCase());
+            ObjectNode result = reply.putObject("result");
+            switch (rpc.path("method").asText()) {
+                case "Switch.Set" -> {
+                    result.put("was_on", output);
+                    output = rpc.path("params").path("on").asBoolean();
+                }
+                case "Switch.GetStatus" -> {
+                    result.put("id", 0);
+                    result.put("output", output);
+                }
+                default -> {
+                    garbledFrames.incrementAndGet();
+                    return new byte[0];
+                }
+            }
+            return reply.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private final class Tx implements Characteristic {
+
+            @Override
+            public List<String> flags() {
+                return List.of("write", "write-without-response");
+            }
+
+            @Override
+            public void write(byte[] value, Map<String, Object> options) throws InterruptedException {
+                startFrame(value);
+            }
+
+            @Override
+            public byte[] read() {
+                throw new DBusExecutionException("org.bluez.Error.NotPermitted: Read not permitted");
+            }
+        }
+
+        private final class Data implements Characteristic {
+
+            @Override
+            public List<String> flags() {
+                return List.of("read", "write", "write-without-response");
+            }
+
+            @Override
+            public void write(byte[] value, Map<String, Object> options) throws InterruptedException {
+                appendFrame(value);
+            }
+
+            @Override
+            public byte[] read() throws InterruptedException {
+                return readResponse();
+            }
+        }
+    }
+
+    /** Phone, headphones, beacon: shows up in scans, never talked to. */
+    private static final class Advertiser implements DeviceHandle {
+
+        private final String address;
+
+        Advertiser(long seq) {
+            this.address = String.format("02:00:%02X:%02X:%02X:%02X", (seq >> 24) & 0xFF, (seq >> 16) & 0xFF,
+                    (seq >> 8) & 0xFF, seq & 0xFF);
+        }
+
+        @Override
+        public String address() {
+            return address;
+        }
+
+        @Override
+        public String name() {
+            return null;
+        }
+
+        @Override
+        public String objectPath() {
+            return SimulatedBleGateway.objectPath(address);
+        }
+
+        @Override
+        public boolean isConnected() {
+            return false;
+        }
+
+        @Override
+        public boolean isServicesResolved() {
+            return false;
+        }
+
+        @Override
+        public Boolean isPaired() {
+            return false;
+        }
+
+        @Override
+        public void connect() {
+            throw new DBusExecutionException("org.bluez.Error.Failed: Connection refused");
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public Characteristic characteristic(String uuid) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.moscait.qwatcher.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Alternative;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BluetoothService} on a simulated radio ({@link SimulatedBleGateway})
+ * so the real index, breakers, drivers and path tracker run under load.
+ * Use {@link #setFailing(boolean)} to inject a BlueZ outage.
+ */
+@Alternative
+@ApplicationScoped
+public class SimulatedBluetoothService extends BluetoothService {
+
+    public static final List<String> DEVICE_IDS = List.of("88:13:BF:00:00:01", "88:13:BF:00:00:02",
+            "88:13:BF:00:00:03");
+
+    public static volatile boolean failing;
+    private static volatile long recoveredAtNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+
+    private final SimulatedBleGateway radio = new SimulatedBleGateway(DEVICE_IDS, () -> failing);
+
+    public static synchronized void setFailing(boolean fail) {
+        if (failing && !fail) {
+            recoveredAtNanos = System.nanoTime();
+        }
+        failing = fail;
+    }
+
+    /** Whether the outage is on, or was still on at {@code nanos} (a {@link System#nanoTime()} value). */
+    public static boolean failedSince(long nanos) {
+        return failing || recoveredAtNanos - nanos >= 0;
+    }
+
+    @Override
+    BleGateway openGateway() {
+        return radio;
+    }
+
+    public int indexSize() {
+        return deviceIndex.size();
+    }
+
+    public int breakerCount() {
+        return breakers.size();
+    }
+
+    public int relayPathCount() {
+        return relayPaths.snapshot().size();
+    }
+
+    public int openConnections() {
+        return radio.openConnections();
+    }
+
+    public int garbledFrames() {
+        return radio.garbledFrames();
+    }
+
+    public int visibleDevices() {
+        return radio.visibleDevices();
+    }
+}
@@ -0,0 +1,20 @@
+package com.moscait.qwatcher.service;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Alternative;
+
+/**
+ * Connectivity probe stand-in so load tests don't depend on real DNS.
+ * Clear {@link #online} to inject an internet outage.
+ */
+@Alternative
+@ApplicationScoped
+public class SimulatedHostService extends HostService {
+
+    public static volatile boolean online = true;
+
+    @Override
+    public boolean isInternetAvailable() {
+        return online;
+    }
+}